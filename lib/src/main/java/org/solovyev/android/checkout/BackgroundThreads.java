@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded pool of background threads shared by the library components: {@link Billing} requests,
+ * {@link BasePurchaseVerifier}s and the inventories which need to do blocking work. Each
+ * component gets its own {@link Executor} (see {@link #newExecutor(int)}) which limits how many
+ * of its tasks may run at once while the threads themselves are shared. The threads run with
+ * the background priority, are created on demand and die after being idle for a while, i.e. no
+ * threads are kept alive if there is no work.
+ * <p>
+ * By default all the components use the instance returned from {@link #getDefault()}. It can be
+ * replaced with {@link #setDefault(BackgroundThreads)} before {@link Billing} is created.
+ * Purchase verification might block for a long time (f.e. waiting for a server), thus, it runs
+ * on a separate instance, see {@link #getDefaultForVerification()}: slow verifications can't take
+ * the threads needed to load the inventory.
+ * </p>
+ */
+@ThreadSafe
+public final class BackgroundThreads {
+
+    public static final int DEFAULT_MAX_THREADS = 4;
+    public static final int DEFAULT_MAX_VERIFICATION_THREADS = 4;
+    // idle threads are stopped after this timeout
+    static final long KEEP_ALIVE_SECONDS = 30;
+
+    @GuardedBy("BackgroundThreads.class")
+    @Nonnull
+    private static BackgroundThreads sDefault = new BackgroundThreads(DEFAULT_MAX_THREADS);
+    @GuardedBy("BackgroundThreads.class")
+    @Nonnull
+    private static BackgroundThreads sDefaultForVerification = new BackgroundThreads(DEFAULT_MAX_VERIFICATION_THREADS);
+
+    @Nonnull
+    private final ThreadPoolExecutor mPool;
+
+    /**
+     * @param maxThreads maximum number of threads which can run at the same time
+     */
+    public BackgroundThreads(int maxThreads) {
+        Check.isTrue(maxThreads > 0, "Should be positive");
+        mPool = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+        mPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return instance used by the library components unless another one is provided explicitly.
+     * If the default instance was shut down a new one is created
+     */
+    @Nonnull
+    public static synchronized BackgroundThreads getDefault() {
+        if (sDefault.isShutdown()) {
+            sDefault = new BackgroundThreads(DEFAULT_MAX_THREADS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Replaces the default instance. Only the components created after this call are affected,
+     * thus, it should be called before {@link Billing} is created, f.e. in
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param threads new default instance
+     */
+    public static synchronized void setDefault(@Nonnull BackgroundThreads threads) {
+        sDefault = threads;
+    }
+
+    /**
+     * @return instance on which {@link Billing} and {@link BasePurchaseVerifier}s verify purchases
+     * unless another one is provided explicitly. If the instance was shut down a new one is
+     * created
+     */
+    @Nonnull
+    public static synchronized BackgroundThreads getDefaultForVerification() {
+        if (sDefaultForVerification.isShutdown()) {
+            sDefaultForVerification = new BackgroundThreads(DEFAULT_MAX_VERIFICATION_THREADS);
+        }
+        return sDefaultForVerification;
+    }
+
+    /**
+     * Same as {@link #setDefault(BackgroundThreads)} but replaces the instance returned from
+     * {@link #getDefaultForVerification()}.
+     *
+     * @param threads new instance for purchase verification
+     */
+    public static synchronized void setDefaultForVerification(@Nonnull BackgroundThreads threads) {
+        sDefaultForVerification = threads;
+    }
+
+    /**
+     * @param concurrency maximum number of tasks of the returned {@link Executor} which can run
+     *                    at the same time
+     * @return executor which runs its tasks on the threads of this pool
+     */
+    @Nonnull
+    public Executor newExecutor(int concurrency) {
+        Check.isTrue(concurrency > 0, "Should be positive");
+        return new LimitedExecutor(concurrency);
+    }
+
+    /**
+     * @return executor which runs its tasks one by one in the order they were submitted
+     */
+    @Nonnull
+    public Executor newSerialExecutor() {
+        return newExecutor(1);
+    }
+
+    /**
+     * Stops accepting new tasks. The tasks which have been already submitted are finished but
+     * {@link Executor}s of this instance reject any further task with
+     * {@link RejectedExecutionException}. Should be called only when the library components
+     * which use this instance are not needed anymore.
+     */
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return mPool.isShutdown();
+    }
+
+    /**
+     * Blocks until all the tasks have finished after {@link #shutdown()}.
+     *
+     * @return true if the tasks have finished, false if the timeout has elapsed
+     */
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return mPool.awaitTermination(timeout, unit);
+    }
+
+    private static final class BackgroundThreadFactory implements ThreadFactory {
+        @Nonnull
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "CheckoutThread #" + mCount.getAndIncrement());
+        }
+    }
+
+    private final class LimitedExecutor implements Executor {
+
+        private final int mConcurrency;
+        @GuardedBy("mQueue")
+        @Nonnull
+        private final Queue<Runnable> mQueue = new ArrayDeque<>();
+        @GuardedBy("mQueue")
+        private int mRunning;
+
+        LimitedExecutor(int concurrency) {
+            mConcurrency = concurrency;
+        }
+
+        @Override
+        public void execute(@Nonnull Runnable command) {
+            if (mPool.isShutdown()) {
+                throw new RejectedExecutionException("Background threads are shut down");
+            }
+            synchronized (mQueue) {
+                if (mRunning >= mConcurrency) {
+                    mQueue.add(command);
+                    return;
+                }
+                mRunning++;
+            }
+            try {
+                submit(command);
+            } catch (RejectedExecutionException e) {
+                synchronized (mQueue) {
+                    mRunning--;
+                }
+                throw e;
+            }
+        }
+
+        private void submit(@Nonnull final Runnable first) {
+            mPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // queued tasks are run on the same thread: this way the tasks submitted
+                    // before the shutdown are not rejected
+                    Runnable task = first;
+                    while (task != null) {
+                        boolean finished = false;
+                        try {
+                            task.run();
+                            finished = true;
+                        } finally {
+                            if (!finished) {
+                                // the exception kills the thread, the rest of the tasks should
+                                // be run on another one
+                                final Runnable next = poll();
+                                if (next != null) {
+                                    submit(next);
+                                }
+                            }
+                        }
+                        task = poll();
+                    }
+                }
+            });
+        }
+
+        @Nullable
+        private Runnable poll() {
+            synchronized (mQueue) {
+                final Runnable next = mQueue.poll();
+                if (next == null) {
+                    mRunning--;
+                }
+                return next;
+            }
+        }
+    }
+}
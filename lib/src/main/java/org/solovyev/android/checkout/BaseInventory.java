@@ -86,14 +86,29 @@ public abstract class BaseInventory implements Inventory {
 
     @Override
     public int load(@Nonnull Request request, @Nonnull Callback callback) {
+        final Task task = new Task(request, callback);
         synchronized (mLock) {
-            final Task task = new Task(request, callback);
             mTasks.add(task);
+            task.mStartingThread = Thread.currentThread();
+        }
+        // the worker is run without the lock: it might do some work on the calling thread. The
+        // products loaded on other threads meanwhile are delivered after this method returns
+        try {
             task.run();
-            return task.mId;
+        } finally {
+            synchronized (mLock) {
+                task.mStartingThread = null;
+                mLock.notifyAll();
+            }
         }
+        return task.mId;
     }
 
+    /**
+     * Wraps <var>l</var> so that its methods are called under {@link #mLock}. Not used by the
+     * inventories of this library (they process the loaded data without the lock, see
+     * {@link CheckoutInventory}), kept for subclasses.
+     */
     protected final <R> RequestListener<R> synchronizedListener(@Nonnull final RequestListener<R> l) {
         return new SynchronizedRequestListener<>(l);
     }
@@ -111,6 +126,10 @@ public abstract class BaseInventory implements Inventory {
         private Callback mCallback;
         @GuardedBy("mLock")
         private final Products mProducts = new Products();
+        // thread which is starting this task in BaseInventory#load, null if the task has started
+        @GuardedBy("mLock")
+        @Nullable
+        private Thread mStartingThread;
 
         public Task(@Nonnull Request request, @Nonnull Callback callback) {
             mRequest = request.copy();
@@ -141,13 +160,33 @@ public abstract class BaseInventory implements Inventory {
 
         public void onDone(@Nonnull Products products) {
             synchronized (mLock) {
+                waitWhileStarting();
                 mProducts.merge(products);
                 onDone();
             }
         }
 
+        /**
+         * Delivers <var>products</var> to the callback without finishing the task, i.e. the
+         * callback is called again when the task is done. Does nothing if the task is already
+         * finished.
+         *
+         * @param products stale products, see {@link Products#isStale()}
+         */
+        public void onStaleLoaded(@Nonnull Products products) {
+            Check.isTrue(products.isStale(), "Products must be stale");
+            synchronized (mLock) {
+                waitWhileStarting();
+                if (mCallback == null) {
+                    return;
+                }
+                mCallback.onLoaded(products);
+            }
+        }
+
         public boolean onMaybeDone(@Nonnull Products products) {
             synchronized (mLock) {
+                waitWhileStarting();
                 mProducts.merge(products);
                 if (!existsUnsupported()) {
                     onDone();
@@ -157,6 +196,25 @@ public abstract class BaseInventory implements Inventory {
             }
         }
 
+        /**
+         * Waits until {@link BaseInventory#load(Request, Callback)} which started this task
+         * returns, so that the callback is not called before the caller gets the task id (and has
+         * a chance to cancel the task). The products loaded synchronously on the starting thread
+         * are delivered immediately.
+         */
+        private void waitWhileStarting() {
+            Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+            final Thread thread = Thread.currentThread();
+            while (mStartingThread != null && mStartingThread != thread) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    thread.interrupt();
+                    return;
+                }
+            }
+        }
+
         private void onDone() {
             Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
             if (mCallback == null) {
@@ -25,13 +25,21 @@ package org.solovyev.android.checkout;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Common base class of common implementation for {@link PurchaseVerifier} that verifies purchases
@@ -43,35 +51,69 @@ public abstract class BasePurchaseVerifier implements PurchaseVerifier {
     private final Executor mBackground;
     @Nonnull
     private final MainThread mMainThread;
+    private final int mThreadCount;
+    private final boolean mParallel;
 
     protected BasePurchaseVerifier() {
         this(new Handler(Looper.getMainLooper()));
     }
 
     protected BasePurchaseVerifier(@Nonnull Handler handler) {
-        this(handler, 2, defaultThreadFactory());
+        // verification might block => it shouldn't run on BackgroundThreads#getDefault()
+        this(handler, BackgroundThreads.getDefaultForVerification(), 2);
     }
 
+    /**
+     * Creates a verifier which runs on its own pool of (up to) <var>threadCount</var> threads.
+     * Idle threads are stopped, still each verifier has its own pool.
+     *
+     * @deprecated use {@link #BasePurchaseVerifier(Handler, BackgroundThreads, int)} which
+     * shares the threads between the verifiers
+     */
+    @Deprecated
     protected BasePurchaseVerifier(@Nonnull Handler handler, int threadCount, @Nonnull ThreadFactory threadFactory) {
         mMainThread = new MainThread(handler);
-        mBackground = Executors.newFixedThreadPool(threadCount, threadFactory);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount, BackgroundThreads.KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        mBackground = pool;
+        mThreadCount = threadCount;
+        mParallel = false;
     }
 
-    @Nonnull
-    private static ThreadFactory defaultThreadFactory() {
-        return new ThreadFactory() {
-            @Nonnull
-            private final AtomicInteger mCount = new AtomicInteger();
+    /**
+     * @param handler     handler of the main application thread
+     * @param threads     threads on which the purchases are verified. If the verification blocks
+     *                    (f.e. waits for a server) these should not be
+     *                    {@link BackgroundThreads#getDefault()} as the library loads the
+     *                    inventory there, see {@link BackgroundThreads#getDefaultForVerification()}
+     * @param threadCount maximum number of verifications running at the same time
+     */
+    protected BasePurchaseVerifier(@Nonnull Handler handler, @Nonnull BackgroundThreads threads, int threadCount) {
+        this(handler, threads, threadCount, false);
+    }
 
-            @Override
-            public Thread newThread(@Nonnull Runnable r) {
-                return new Thread(r, "PurchaseVerifierThread #" + mCount.getAndIncrement());
-            }
-        };
+    /**
+     * Same as {@link #BasePurchaseVerifier(Handler, BackgroundThreads, int)} but if
+     * <var>parallel</var> is true a list of purchases passed to {@link #verify(List, RequestListener)}
+     * is split into (up to) <var>threadCount</var> parts which are verified in parallel (each
+     * with its own {@link #doVerify(List, RequestListener)} call). The verified purchases are
+     * then delivered to the listener at once and in the original order. If any part fails the
+     * listener gets the first error. Useful if {@link #doVerify(List, RequestListener)} is
+     * CPU-bound, f.e. checks signatures locally.
+     */
+    protected BasePurchaseVerifier(@Nonnull Handler handler, @Nonnull BackgroundThreads threads, int threadCount, boolean parallel) {
+        mMainThread = new MainThread(handler);
+        mBackground = threads.newExecutor(threadCount);
+        mThreadCount = threadCount;
+        mParallel = parallel;
     }
 
     @Override
     public final void verify(@Nonnull final List<Purchase> purchases, @Nonnull final RequestListener<List<Purchase>> listener) {
+        if (mParallel && mThreadCount > 1 && purchases.size() > 1) {
+            verifyInParallel(purchases, listener);
+            return;
+        }
         if (MainThread.isMainThread()) {
             mBackground.execute(new Runnable() {
                 @Override
@@ -84,6 +126,24 @@ public abstract class BasePurchaseVerifier implements PurchaseVerifier {
         }
     }
 
+    private void verifyInParallel(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+        final int parts = Math.min(mThreadCount, purchases.size());
+        if (MainThread.isMainThread()) {
+            final ParallelVerification verification = new ParallelVerification(purchases, parts, new MainThreadRequestListener(listener));
+            for (int i = 0; i < parts; i++) {
+                mBackground.execute(verification);
+            }
+        } else {
+            // listener must be called on this thread => the result is waited for here
+            final ParallelVerification verification = new ParallelVerification(purchases, parts, null);
+            for (int i = 1; i < parts; i++) {
+                mBackground.execute(verification);
+            }
+            verification.run();
+            verification.await(listener);
+        }
+    }
+
     /**
      * Implementation should verify a list of <var>purchases</var> and deliver the result to the
      * passed <var>listener</var>. Note that at the end of the execution one and only one method of
@@ -125,4 +185,130 @@ public abstract class BasePurchaseVerifier implements PurchaseVerifier {
             });
         }
     }
+
+    /**
+     * Verification of a list of purchases split into parts. Each {@link #run()} call verifies
+     * the parts which haven't been taken yet by other threads, thus, a waiting thread never
+     * waits for a part which is not being verified.
+     */
+    private final class ParallelVerification implements Runnable {
+
+        @Nonnull
+        private final List<List<Purchase>> mParts;
+        @Nonnull
+        private final AtomicReferenceArray<List<Purchase>> mResults;
+        @Nonnull
+        private final AtomicInteger mNextPart = new AtomicInteger();
+        @Nonnull
+        private final AtomicInteger mPartsLeft;
+        @Nonnull
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        @Nonnull
+        private final AtomicReference<Failure> mFailure = new AtomicReference<>();
+        // listener to be called on the thread which finishes the last part, null if the result is
+        // waited for, see #await
+        @Nullable
+        private final RequestListener<List<Purchase>> mListener;
+
+        ParallelVerification(@Nonnull List<Purchase> purchases, int parts, @Nullable RequestListener<List<Purchase>> listener) {
+            mParts = new ArrayList<>(parts);
+            final int size = purchases.size();
+            for (int i = 0; i < parts; i++) {
+                mParts.add(purchases.subList(i * size / parts, (i + 1) * size / parts));
+            }
+            mResults = new AtomicReferenceArray<>(parts);
+            mPartsLeft = new AtomicInteger(parts);
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            int part;
+            while ((part = mNextPart.getAndIncrement()) < mParts.size()) {
+                verify(part);
+            }
+        }
+
+        private void verify(int part) {
+            final PartListener listener = new PartListener(part);
+            try {
+                doVerify(mParts.get(part), listener);
+            } catch (RuntimeException e) {
+                listener.onError(ResponseCodes.EXCEPTION, e);
+            }
+        }
+
+        private void onPartDone() {
+            if (mPartsLeft.decrementAndGet() > 0) {
+                return;
+            }
+            if (mListener != null) {
+                deliver(mListener);
+            } else {
+                mDone.countDown();
+            }
+        }
+
+        void await(@Nonnull RequestListener<List<Purchase>> listener) {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listener.onError(ResponseCodes.EXCEPTION, e);
+                return;
+            }
+            deliver(listener);
+        }
+
+        private void deliver(@Nonnull RequestListener<List<Purchase>> listener) {
+            final Failure failure = mFailure.get();
+            if (failure != null) {
+                listener.onError(failure.mResponse, failure.mException);
+                return;
+            }
+            final List<Purchase> verified = new ArrayList<>();
+            for (int i = 0; i < mResults.length(); i++) {
+                verified.addAll(mResults.get(i));
+            }
+            listener.onSuccess(verified);
+        }
+
+        private final class PartListener implements RequestListener<List<Purchase>> {
+            private final int mPart;
+            // only the first call counts
+            @Nonnull
+            private final AtomicBoolean mCalled = new AtomicBoolean();
+
+            PartListener(int part) {
+                mPart = part;
+            }
+
+            @Override
+            public void onSuccess(@Nonnull List<Purchase> result) {
+                if (mCalled.compareAndSet(false, true)) {
+                    mResults.set(mPart, result);
+                    onPartDone();
+                }
+            }
+
+            @Override
+            public void onError(int response, @Nonnull Exception e) {
+                if (mCalled.compareAndSet(false, true)) {
+                    mFailure.compareAndSet(null, new Failure(response, e));
+                    onPartDone();
+                }
+            }
+        }
+    }
+
+    private static final class Failure {
+        private final int mResponse;
+        @Nonnull
+        private final Exception mException;
+
+        Failure(int response, @Nonnull Exception exception) {
+            mResponse = response;
+            mException = exception;
+        }
+    }
 }
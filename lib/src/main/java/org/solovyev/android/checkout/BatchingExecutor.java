@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Executor which coalesces runnables into batches: instead of posting every runnable separately
+ * to the underlying executor it posts a single task which runs all the runnables accumulated
+ * by the time it is executed. If the underlying executor is {@link MainThread} this means one
+ * message per main thread loop iteration no matter how many results have arrived in between.
+ * Runnables are executed in the order they were added. A runnable which has not been executed
+ * yet can be cancelled via {@link #cancel(Runnable)}.
+ */
+@ThreadSafe
+final class BatchingExecutor implements CancellableExecutor {
+
+    @Nonnull
+    private final CancellableExecutor mExecutor;
+    // executes the remaining runnables if one of them has thrown, must not run them synchronously
+    @Nonnull
+    private final Executor mRescheduler;
+    @GuardedBy("mRunnables")
+    @Nonnull
+    private final ArrayDeque<Runnable> mRunnables = new ArrayDeque<>();
+    @GuardedBy("mRunnables")
+    private boolean mScheduled;
+    @Nonnull
+    private final Runnable mBatch = new Runnable() {
+        @Override
+        public void run() {
+            runBatch();
+        }
+    };
+
+    BatchingExecutor(@Nonnull CancellableExecutor executor) {
+        this(executor, executor);
+    }
+
+    BatchingExecutor(@Nonnull CancellableExecutor executor, @Nonnull Executor rescheduler) {
+        mExecutor = executor;
+        mRescheduler = rescheduler;
+    }
+
+    /**
+     * @return executor which runs the batches on the main application thread. If a runnable
+     * throws the remaining runnables are posted to the next iteration of the main thread looper
+     * ({@link MainThread#execute(Runnable)} would run them right away, before the exception is
+     * propagated)
+     */
+    @Nonnull
+    static BatchingExecutor forMainThread(@Nonnull final MainThread mainThread) {
+        return new BatchingExecutor(mainThread, new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable runnable) {
+                mainThread.post(runnable);
+            }
+        });
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable runnable) {
+        synchronized (mRunnables) {
+            mRunnables.add(runnable);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        // might run the batch synchronously (f.e. if we're on the main thread already)
+        mExecutor.execute(mBatch);
+    }
+
+    @Override
+    public void cancel(@Nonnull Runnable runnable) {
+        synchronized (mRunnables) {
+            mRunnables.remove(runnable);
+        }
+    }
+
+    private void runBatch() {
+        Runnable runnable;
+        while ((runnable = poll()) != null) {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                // don't let the remaining runnables get stuck in the queue
+                rescheduleBatch();
+                throw e;
+            }
+        }
+    }
+
+    private void rescheduleBatch() {
+        synchronized (mRunnables) {
+            if (mRunnables.isEmpty()) {
+                mScheduled = false;
+                return;
+            }
+        }
+        mRescheduler.execute(mBatch);
+    }
+
+    @Nullable
+    private Runnable poll() {
+        synchronized (mRunnables) {
+            final Runnable runnable = mRunnables.poll();
+            if (runnable == null) {
+                mScheduled = false;
+            }
+            return runnable;
+        }
+    }
+}
@@ -32,18 +32,22 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.DeadObjectException;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.RemoteException;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -79,6 +83,9 @@ public final class Billing {
     static final long MINUTE = SECOND * 60L;
     static final long HOUR = MINUTE * 60L;
     static final long DAY = HOUR * 24L;
+    // leaves BackgroundThreads.DEFAULT_MAX_VERIFICATION_THREADS - VERIFICATION_THREADS threads to
+    // the default BasePurchaseVerifier, see #mVerificationBackground
+    static final int VERIFICATION_THREADS = 2;
 
     @Nonnull
     private static final String TAG = "Checkout";
@@ -111,6 +118,8 @@ public final class Billing {
     private final PendingRequests mPendingRequests = new PendingRequests();
     @Nonnull
     private final BillingRequests mRequests = newRequestsBuilder().withTag(null).onBackgroundThread().create();
+    @Nonnull
+    private final InventoryLoader mInventoryLoader = new InventoryLoader(this);
     @GuardedBy("mLock")
     @Nonnull
     private final PlayStoreBroadcastReceiver mPlayStoreBroadcastReceiver;
@@ -118,24 +127,42 @@ public final class Billing {
     private final PlayStoreListener mPlayStoreListener = new PlayStoreListener() {
         @Override
         public void onPurchasesChanged() {
-            mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+            invalidatePurchases();
         }
     };
+    // listeners notified when the purchases are changed by this app, see Billing#onPurchasesChanged
+    @GuardedBy("mLock")
+    @Nonnull
+    private final List<PlayStoreListener> mPurchasesListeners = new ArrayList<>();
     @GuardedBy("mLock")
     @Nullable
     private InAppBillingService mService;
     @GuardedBy("mLock")
     @Nonnull
     private State mState = State.INITIAL;
+    @GuardedBy("mLock")
+    @Nonnull
+    private final ConnectionSupervisor mSupervisor = new ConnectionSupervisor();
+    // products (with API versions) for which billing is known to be supported during the current
+    // connection, see Billing#isBillingKnownToBeSupported
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Set<String> mBillingSupported = new HashSet<>();
+    // Robotmedia imports by the absolute paths of their files, see #getRobotmediaImport(File)
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Map<String, RobotmediaImport> mRobotmediaImports = new HashMap<>();
     @Nonnull
     private CancellableExecutor mMainThread;
     @Nonnull
-    private Executor mBackground = Executors.newSingleThreadExecutor(new ThreadFactory() {
-        @Override
-        public Thread newThread(@Nonnull Runnable r) {
-            return new Thread(r, "RequestThread");
-        }
-    });
+    private CancellableExecutor mBatchedMainThread;
+    @Nonnull
+    private Executor mBackground = BackgroundThreads.getDefault().newSerialExecutor();
+    // purchases of PurchaseFlows are verified on their own executor: verification might block
+    // (f.e. a server round-trip) and should neither hold the requests nor take the threads which
+    // load the inventory
+    @Nonnull
+    private Executor mVerificationBackground = BackgroundThreads.getDefaultForVerification().newExecutor(VERIFICATION_THREADS);
     @Nonnull
     private ServiceConnector mConnector = new DefaultServiceConnector();
     @GuardedBy("mLock")
@@ -159,7 +186,9 @@ public final class Billing {
         } else {
             mContext = context.getApplicationContext();
         }
-        mMainThread = new MainThread(handler);
+        final MainThread mainThread = new MainThread(handler);
+        mMainThread = mainThread;
+        mBatchedMainThread = BatchingExecutor.forMainThread(mainThread);
         mConfiguration = new StaticConfiguration(configuration);
         Check.isNotEmpty(mConfiguration.getPublicKey());
         final Cache cache = configuration.getCache();
@@ -244,6 +273,35 @@ public final class Billing {
         return new DefaultPurchaseVerifier(publicKey);
     }
 
+    /**
+     * Creates a purchase verifier which remembers (in memory) the purchases successfully verified
+     * by <var>verifier</var> and doesn't verify them again unless their data or signature change.
+     *
+     * @param verifier verifier which does the actual verification
+     * @return caching purchase verifier
+     */
+    @Nonnull
+    public static PurchaseVerifier newCachingPurchaseVerifier(@Nonnull PurchaseVerifier verifier) {
+        return new CachingPurchaseVerifier(verifier, null);
+    }
+
+    /**
+     * Same as {@link #newCachingPurchaseVerifier(PurchaseVerifier)} but the verified purchases are
+     * also saved in <var>file</var> and are not verified again after the application restarts.
+     * Note that the content of the file is trusted: anybody able to modify it can make
+     * a purchase look verified.
+     *
+     * @param verifier verifier which does the actual verification
+     * @param file     file where the verified purchases are saved, f.e. a file in
+     *                 {@link Context#getFilesDir()}. The file should not be shared between
+     *                 different verifiers
+     * @return caching purchase verifier
+     */
+    @Nonnull
+    public static PurchaseVerifier newCachingPurchaseVerifier(@Nonnull PurchaseVerifier verifier, @Nonnull File file) {
+        return new CachingPurchaseVerifier(verifier, file);
+    }
+
     /**
      * @return default logger
      */
@@ -276,6 +334,23 @@ public final class Billing {
         return mContext;
     }
 
+    /**
+     * @return {@link RobotmediaImport} for <var>file</var> shared by all the inventories of this
+     * {@link Billing}, so that the imported purchases are read from the file only once
+     */
+    @Nonnull
+    RobotmediaImport getRobotmediaImport(@Nonnull File file) {
+        final String path = file.getAbsolutePath();
+        synchronized (mLock) {
+            RobotmediaImport robotmediaImport = mRobotmediaImports.get(path);
+            if (robotmediaImport == null) {
+                robotmediaImport = new RobotmediaImport(mContext, file);
+                mRobotmediaImports.put(path, robotmediaImport);
+            }
+            return robotmediaImport;
+        }
+    }
+
     @Nonnull
     Configuration getConfiguration() {
         return mConfiguration;
@@ -313,6 +388,7 @@ public final class Billing {
                 // CONNECTED (only one option left is CONNECTING) then we should directly jump to
                 // FAILED state as something strange has happened on the billing service side
                 if (mState == State.CONNECTED) {
+                    mSupervisor.onDisconnected(currentTimeMillis(), true);
                     setState(State.DISCONNECTING);
                 }
                 if (mState == State.DISCONNECTING) {
@@ -333,8 +409,13 @@ public final class Billing {
         mBackground = background;
     }
 
+    void setVerificationBackground(@Nonnull Executor background) {
+        mVerificationBackground = background;
+    }
+
     void setMainThread(@Nonnull CancellableExecutor mainThread) {
         mMainThread = mainThread;
+        mBatchedMainThread = new BatchingExecutor(mainThread);
     }
 
     void setPurchaseVerifier(@Nonnull PurchaseVerifier purchaseVerifier) {
@@ -360,7 +441,14 @@ public final class Billing {
             Check.isTrue(sPreviousStates.get(newState).contains(mState), "State " + newState + " can't come right after " + mState + " state");
             mState = newState;
             switch (mState) {
+                case CONNECTING:
+                    mSupervisor.onConnecting(currentTimeMillis());
+                    mBillingSupported.clear();
+                    break;
                 case DISCONNECTING:
+                    // the answers might be different after reconnection (f.e. if Play Store is
+                    // updated in the meantime)
+                    mBillingSupported.clear();
                     // as we can jump directly from DISCONNECTING to CONNECTED state let's remove
                     // the listener here instead of in DISCONNECTED state. That also will protect
                     // us from getting in the following trap: CONNECTED->DISCONNECTING->CONNECTING->FAILED
@@ -371,28 +459,77 @@ public final class Billing {
                     // Registering the listener here also means that it should be never registered
                     // in the FAILED state
                     mPlayStoreBroadcastReceiver.addListener(mPlayStoreListener);
+                    mSupervisor.onConnected(currentTimeMillis());
                     executePendingRequests();
                     break;
                 case FAILED:
                     // the play store listener should not be registered in the receiver in case of
                     // failure as FAILED state can't occur after CONNECTED
                     Check.isTrue(!mPlayStoreBroadcastReceiver.contains(mPlayStoreListener), "Leaking the listener");
-                    mMainThread.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            mPendingRequests.onConnectionFailed();
-                        }
-                    });
+                    mSupervisor.onFailed(currentTimeMillis());
+                    failPendingRequests();
                     break;
             }
         }
     }
 
+    private void failPendingRequests() {
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPendingRequests.onConnectionFailed();
+            }
+        });
+    }
+
+    /**
+     * Returns the statistics of the connections to the Billing service made by this instance.
+     *
+     * @return snapshot of the current connection statistics
+     */
+    @Nonnull
+    public ConnectionStats getConnectionStats() {
+        synchronized (mLock) {
+            return mSupervisor.getStats();
+        }
+    }
+
+    @Nonnull
+    private static String makeBillingSupportedKey(@Nonnull String product, int apiVersion) {
+        return product + "_" + apiVersion;
+    }
+
+    /**
+     * Checks whether the billing service has already confirmed during the current connection that
+     * billing is supported for the given <var>product</var>. Doesn't send any requests.
+     *
+     * @param product    product type, see {@link ProductTypes}
+     * @param apiVersion billing API version
+     * @return true if billing is known to be supported, false if it's not known yet
+     */
+    boolean isBillingKnownToBeSupported(@Nonnull String product, int apiVersion) {
+        synchronized (mLock) {
+            return mState == State.CONNECTED && mBillingSupported.contains(makeBillingSupportedKey(product, apiVersion));
+        }
+    }
+
+    private void onBillingSupported(@Nonnull String product, int apiVersion) {
+        synchronized (mLock) {
+            if (mState != State.CONNECTED) {
+                return;
+            }
+            mBillingSupported.add(makeBillingSupportedKey(product, apiVersion));
+        }
+    }
+
     /**
      * Connects to the Billing service. Called automatically when first request is done,
      * Use {@link #disconnect()} to disconnect.
      * It's allowed to call this method several times, if service is already connected nothing will
      * happen.
+     * If several consecutive connection attempts have failed recently the service is not bound
+     * and all pending requests fail immediately with {@link ResponseCodes#SERVICE_NOT_CONNECTED}
+     * until the back-off period (see {@link #getConnectionStats()}) elapses.
      */
     public void connect() {
         synchronized (mLock) {
@@ -406,13 +543,50 @@ public final class Billing {
             if (mConfiguration.isAutoConnect() && mCheckoutCount <= 0) {
                 warning("Auto connection feature is turned on. There is no need in calling Billing.connect() manually. See Billing.Configuration.isAutoConnect");
             }
-            setState(State.CONNECTING);
-            mMainThread.execute(new Runnable() {
-                @Override
-                public void run() {
-                    connectOnMainThread();
-                }
-            });
+            startConnecting();
+        }
+    }
+
+    private void startConnecting() {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        final long coolDown = mSupervisor.getCoolDown(currentTimeMillis());
+        if (coolDown > 0) {
+            // the service keeps failing, there is no point in binding it again right now
+            warning("Billing service is not available, next connection attempt in " + coolDown + "ms");
+            failPendingRequests();
+            return;
+        }
+        setState(State.CONNECTING);
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                connectOnMainThread();
+            }
+        });
+    }
+
+    /**
+     * Called as soon as the process hosting the <var>service</var> dies. In contrast to
+     * {@link ServiceConnection#onServiceDisconnected(ComponentName)}, which might be delivered
+     * with a significant delay, this method releases the dead service immediately (so that no more
+     * requests are sent to it) and starts a new connection so that the pending requests are resumed
+     * as soon as possible.
+     *
+     * @param service service which is not alive anymore
+     */
+    void onServiceDied(@Nonnull InAppBillingService service) {
+        synchronized (mLock) {
+            if (mService != service) {
+                // either the death has already been handled or the service was released
+                return;
+            }
+            // the service should be restored only if it was not disconnected on purpose
+            final boolean reconnect = mState == State.CONNECTED;
+            warning("Billing service has died" + (reconnect ? ", reconnecting" : ""));
+            setService(null, false);
+            if (reconnect) {
+                startConnecting();
+            }
         }
     }
 
@@ -449,6 +623,49 @@ public final class Billing {
         }
     }
 
+    /**
+     * Adds a listener which is notified when a purchase, a subscription change or a consumption
+     * made through this {@link Billing} succeeds. In contrast to
+     * {@link #addPlayStoreListener(PlayStoreListener)} the listener might be called on any thread.
+     *
+     * @param listener listener to be added
+     */
+    void addPurchasesListener(@Nonnull PlayStoreListener listener) {
+        synchronized (mLock) {
+            Check.isTrue(!mPurchasesListeners.contains(listener), "Listener " + listener + " is already in the list");
+            mPurchasesListeners.add(listener);
+        }
+    }
+
+    void removePurchasesListener(@Nonnull PlayStoreListener listener) {
+        synchronized (mLock) {
+            mPurchasesListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Removes the cached purchases and detaches the purchases which are being loaded by
+     * {@link InventoryLoader} (they might have been requested before the change) so that the
+     * next load gets the actual purchases.
+     */
+    private void invalidatePurchases() {
+        mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+        mInventoryLoader.onPurchasesChanged();
+    }
+
+    private void onPurchasesChanged() {
+        final List<PlayStoreListener> listeners;
+        synchronized (mLock) {
+            if (mPurchasesListeners.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<>(mPurchasesListeners);
+        }
+        for (PlayStoreListener listener : listeners) {
+            listener.onPurchasesChanged();
+        }
+    }
+
     /**
      * Disconnects from the Billing service cancelling all pending requests if any. Any subsequent
      * request will automatically reconnect the Billing service. Thus, no more requests should be
@@ -469,6 +686,7 @@ public final class Billing {
                 return;
             }
             if (mState == State.CONNECTED) {
+                mSupervisor.onDisconnected(currentTimeMillis(), false);
                 setState(State.DISCONNECTING);
                 mMainThread.execute(new Runnable() {
                     @Override
@@ -562,29 +780,92 @@ public final class Billing {
      */
     @Nonnull
     public Requests getRequests(@Nullable Object tag) {
+        return getRequests(tag, false);
+    }
+
+    @Nonnull
+    Requests getRequests(@Nullable Object tag, boolean batched) {
         if (tag == null) {
             return (Requests) getRequests();
         }
-        return (Requests) new RequestsBuilder().withTag(tag).onMainThread().create();
+        final RequestsBuilder builder = new RequestsBuilder().withTag(tag);
+        return (Requests) (batched ? builder.onMainThreadInBatches() : builder.onMainThread()).create();
+    }
+
+    /**
+     * Returns SKU details for the given <var>skus</var> if they are in the cache and are not
+     * expired. In contrast to {@link BillingRequests#getSkus(String, List, RequestListener)} this
+     * method never connects to the billing service and returns the result on the calling thread.
+     * Can be used to render the cached data without waiting for the connection.
+     *
+     * @param product product type, see {@link ProductTypes}
+     * @param skus    list of SKUs
+     * @return cached SKU details, null if there is no (unexpired) cached value
+     */
+    @Nullable
+    public Skus peekSkus(@Nonnull String product, @Nonnull List<String> skus) {
+        Check.isNotEmpty(product);
+        Check.isNotEmpty(skus);
+        return peek(new GetSkuDetailsRequest(product, skus));
+    }
+
+    /**
+     * Returns purchases of the given <var>product</var> if they are in the cache and are not
+     * expired. In contrast to {@link BillingRequests#getPurchases(String, String, RequestListener)}
+     * this method never connects to the billing service and returns the result on the calling
+     * thread.
+     *
+     * @param product           product type, see {@link ProductTypes}
+     * @param continuationToken token of the page to be returned, null for the first page
+     * @return cached purchases, null if there is no (unexpired) cached value
+     */
+    @Nullable
+    public Purchases peekPurchases(@Nonnull String product, @Nullable String continuationToken) {
+        Check.isNotEmpty(product);
+        return peek(new GetPurchasesRequest(product, continuationToken, mConfiguration.getPurchaseVerifier()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private <R> R peek(@Nonnull Request<R> request) {
+        if (!mCache.hasCache()) {
+            return null;
+        }
+        final String key = request.getCacheKey();
+        if (key == null) {
+            return null;
+        }
+        final Cache.Entry entry = mCache.get(request.getType().getCacheKey(key));
+        return entry == null ? null : (R) entry.data;
+    }
+
+    /**
+     * @return loader shared by the {@link Inventory}s of all the {@link Checkout}s which use this
+     * {@link Billing}
+     */
+    @Nonnull
+    InventoryLoader getInventoryLoader() {
+        return mInventoryLoader;
     }
 
     @Nonnull
     PurchaseFlow createPurchaseFlow(@Nonnull IntentStarter intentStarter, int requestCode, @Nonnull RequestListener<Purchase> listener) {
+        listener = new PurchasesChangedListener<>(listener);
         if (mCache.hasCache()) {
             listener = new RequestListenerWrapper<Purchase>(listener) {
                 @Override
                 public void onSuccess(@Nonnull Purchase result) {
-                    mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+                    invalidatePurchases();
                     super.onSuccess(result);
                 }
             };
         }
-        return new PurchaseFlow(intentStarter, requestCode, listener, mConfiguration.getPurchaseVerifier());
+        return new PurchaseFlow(intentStarter, requestCode, listener, mConfiguration.getPurchaseVerifier(), mVerificationBackground, mMainThread);
     }
 
     @Nonnull
-    private <R> RequestListener<R> onMainThread(@Nonnull final RequestListener<R> listener) {
-        return new MainThreadRequestListener<>(mMainThread, listener);
+    private <R> RequestListener<R> onMainThread(@Nonnull final RequestListener<R> listener, boolean batched) {
+        return new MainThreadRequestListener<>(batched ? mBatchedMainThread : mMainThread, listener);
     }
 
     public void onCheckoutStarted() {
@@ -831,6 +1112,17 @@ public final class Billing {
                 // service is connected, let's start request
                 try {
                     localRequest.start(localService, mContext.getPackageName());
+                } catch (DeadObjectException e) {
+                    onServiceDied(localService);
+                    if (localRequest.getType().idempotent) {
+                        // nothing has been delivered to the listener yet => let's keep the
+                        // request in the queue, it will be executed as soon as the connection is
+                        // restored
+                        return false;
+                    }
+                    // the service might have died after it had handled the request (e.g. a
+                    // purchase was consumed) => executing the request again is not safe
+                    localRequest.onError(e);
                 } catch (RemoteException | RuntimeException | RequestException e) {
                     localRequest.onError(e);
                 }
@@ -913,6 +1205,9 @@ public final class Billing {
         private Object mTag;
         @Nullable
         private Boolean mOnMainThread;
+        private boolean mBatched;
+        @Nullable
+        private Executor mExecutor;
 
         private RequestsBuilder() {
         }
@@ -954,9 +1249,69 @@ public final class Billing {
             return this;
         }
 
+        /**
+         * Same as {@link #onMainThread()} but {@link RequestListener} methods are called in
+         * batches: all the results which arrive before the main thread handles the first of them
+         * are delivered in one main thread message. This reduces the number of the messages posted
+         * to the main thread when many requests finish at the same time (f.e. while
+         * {@link Inventory} is loading). The results are delivered in the order they arrive and can
+         * still be cancelled until they are delivered. Batches are shared by all
+         * {@link BillingRequests} created with this option.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public RequestsBuilder onMainThreadInBatches() {
+            Check.isNull(mOnMainThread);
+            mOnMainThread = true;
+            mBatched = true;
+            return this;
+        }
+
+        /**
+         * Makes {@link RequestListener} methods to be called on the given <var>executor</var>.
+         * This allows to do a heavy work in the listener (f.e. database writes) without
+         * blocking the request thread and without switching to the main application thread first.
+         * Note that as the tasks can't be removed from an arbitrary {@link Executor} a cancelled
+         * listener is just not called when its task is executed.
+         *
+         * @param executor executor to be used for listener calls
+         * @return this builder
+         */
+        @Nonnull
+        public RequestsBuilder onExecutor(@Nonnull Executor executor) {
+            Check.isNull(mOnMainThread);
+            mOnMainThread = false;
+            mExecutor = executor;
+            return this;
+        }
+
         @Nonnull
         public BillingRequests create() {
-            return new Requests(mTag, mOnMainThread == null ? true : mOnMainThread);
+            return new Requests(mTag, mOnMainThread == null ? true : mOnMainThread, mBatched, mExecutor);
+        }
+    }
+
+    /**
+     * Remembers that billing is supported before passing the result further. Negative answers are
+     * not remembered (as they are not cached): the product might become supported at any moment,
+     * f.e. when the user adds an account.
+     */
+    private final class BillingSupportedListener extends RequestListenerWrapper<Object> {
+        @Nonnull
+        private final String mProduct;
+        private final int mApiVersion;
+
+        BillingSupportedListener(@Nonnull String product, int apiVersion, @Nonnull RequestListener<Object> listener) {
+            super(listener);
+            mProduct = product;
+            mApiVersion = apiVersion;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull Object result) {
+            onBillingSupported(mProduct, mApiVersion);
+            super.onSuccess(result);
         }
     }
 
@@ -967,9 +1322,16 @@ public final class Billing {
 
         private final boolean mOnMainThread;
 
-        private Requests(@Nullable Object tag, boolean onMainThread) {
+        private final boolean mBatched;
+
+        @Nullable
+        private final Executor mExecutor;
+
+        private Requests(@Nullable Object tag, boolean onMainThread, boolean batched, @Nullable Executor executor) {
             mTag = tag;
             mOnMainThread = onMainThread;
+            mBatched = batched;
+            mExecutor = executor;
         }
 
         @Override
@@ -986,7 +1348,7 @@ public final class Billing {
         public int isBillingSupported(@Nonnull String product, int apiVersion,
                                       @Nonnull RequestListener<Object> listener) {
             Check.isNotEmpty(product);
-            return runWhenConnected(new BillingSupportedRequest(product, apiVersion, null), wrapListener(listener), mTag);
+            return runWhenConnected(new BillingSupportedRequest(product, apiVersion, null), new BillingSupportedListener(product, apiVersion, wrapListener(listener)), mTag);
         }
 
         @Override
@@ -1002,12 +1364,26 @@ public final class Billing {
 
         @Nonnull
         private <R> RequestListener<R> wrapListener(@Nonnull RequestListener<R> listener) {
-            return mOnMainThread ? onMainThread(listener) : listener;
+            if (mExecutor != null) {
+                return new ExecutorRequestListener<>(mExecutor, listener);
+            }
+            return mOnMainThread ? onMainThread(listener, mBatched) : listener;
+        }
+
+        @Nullable
+        Object getTag() {
+            return mTag;
         }
 
         @Nonnull
         Executor getDeliveryExecutor() {
-            return mOnMainThread ? mMainThread : SameThreadExecutor.INSTANCE;
+            if (mExecutor != null) {
+                return mExecutor;
+            }
+            if (!mOnMainThread) {
+                return SameThreadExecutor.INSTANCE;
+            }
+            return mBatched ? mBatchedMainThread : mMainThread;
         }
 
         @Override
@@ -1119,12 +1495,13 @@ public final class Billing {
         @Override
         public int consume(@Nonnull String token, @Nullable Bundle extraParams, @Nonnull RequestListener<Object> listener) {
             Check.isNotEmpty(token);
-            return runWhenConnected(new ConsumePurchaseRequest(token, extraParams), wrapListener(listener), mTag);
+            return runWhenConnected(new ConsumePurchaseRequest(token, extraParams), new PurchasesChangedListener<>(wrapListener(listener)), mTag);
         }
 
         @Override
         public void cancelAll() {
             mPendingRequests.cancelAll(mTag);
+            mInventoryLoader.cancelAll(mTag);
         }
 
         @Override
@@ -1246,6 +1623,26 @@ public final class Billing {
 
     }
 
+    /**
+     * Notifies the listeners added with {@link #addPurchasesListener(PlayStoreListener)} after a
+     * successful request.
+     */
+    private final class PurchasesChangedListener<R> extends RequestListenerWrapper<R> {
+
+        PurchasesChangedListener(@Nonnull RequestListener<R> listener) {
+            super(listener);
+        }
+
+        @Override
+        public void onSuccess(@Nonnull R result) {
+            // the inventory loads started before the change must not be reused even if there is
+            // no cache (see CachingRequestListener)
+            mInventoryLoader.onPurchasesChanged();
+            super.onSuccess(result);
+            onPurchasesChanged();
+        }
+    }
+
     private class CachingRequestListener<R> extends RequestListenerWrapper<R> {
         @Nonnull
         private final Request<R> mRequest;
@@ -1271,7 +1668,7 @@ public final class Billing {
                 case CONSUME_PURCHASE:
                     // these requests might affect the state of purchases => we need to invalidate caches.
                     // see Billing#onPurchaseFinished() also
-                    mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+                    invalidatePurchases();
                     break;
             }
             super.onSuccess(result);
@@ -1286,12 +1683,12 @@ public final class Billing {
                 case PURCHASE:
                 case CHANGE_PURCHASE:
                     if (response == ITEM_ALREADY_OWNED) {
-                        mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+                        invalidatePurchases();
                     }
                     break;
                 case CONSUME_PURCHASE:
                     if (response == ITEM_NOT_OWNED) {
-                        mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+                        invalidatePurchases();
                     }
                     break;
             }
@@ -1300,26 +1697,28 @@ public final class Billing {
     }
 
     private final class DefaultServiceConnector implements ServiceConnector {
-        @Nonnull
-        private final ServiceConnection mConnection = new ServiceConnection() {
-            @Override
-            public void onServiceDisconnected(ComponentName name) {
-                setService(null, false);
-            }
-
-            @Override
-            public void onServiceConnected(ComponentName name,
-                                           IBinder service) {
-                setService(InAppBillingServiceFactory.create(service), true);
-            }
-        };
+        // a new connection is created for every binding so that the callbacks of the previous
+        // (possibly, dead) binding can be told apart and ignored
+        @GuardedBy("this")
+        @Nullable
+        private Connection mConnection;
 
         @Override
         public boolean connect() {
+            final Connection connection = new Connection();
+            final Connection oldConnection;
+            synchronized (this) {
+                oldConnection = mConnection;
+                mConnection = connection;
+            }
+            if (oldConnection != null) {
+                // the binding of a died service might still be registered, let's release it
+                unbind(oldConnection);
+            }
             try {
                 final Intent intent = new Intent("com.android.vending.billing.InAppBillingService.BIND");
                 intent.setPackage("com.android.vending");
-                return mContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+                return mContext.bindService(intent, connection, Context.BIND_AUTO_CREATE);
             } catch (IllegalArgumentException e) {
                 // some devices throw IllegalArgumentException (Service Intent must be explicit)
                 // even though we set package name explicitly. Let's not crash the app and catch
@@ -1335,7 +1734,106 @@ public final class Billing {
 
         @Override
         public void disconnect() {
-            mContext.unbindService(mConnection);
+            final Connection connection;
+            synchronized (this) {
+                connection = mConnection;
+                mConnection = null;
+            }
+            if (connection != null) {
+                unbind(connection);
+            }
+        }
+
+        private void unbind(@Nonnull Connection connection) {
+            connection.release();
+            try {
+                mContext.unbindService(connection);
+            } catch (IllegalArgumentException e) {
+                // service was never bound
+                Billing.warning("Can't unbind billing service: " + e.getMessage());
+            }
+        }
+
+        private boolean isCurrent(@Nonnull Connection connection) {
+            synchronized (this) {
+                return mConnection == connection;
+            }
+        }
+
+        private final class Connection implements ServiceConnection, IBinder.DeathRecipient {
+            @GuardedBy("this")
+            @Nullable
+            private IBinder mBinder;
+            @GuardedBy("this")
+            @Nullable
+            private InAppBillingService mService;
+
+            @Override
+            public void onServiceConnected(ComponentName name, IBinder binder) {
+                if (!isCurrent(this)) {
+                    return;
+                }
+                final InAppBillingService service = InAppBillingServiceFactory.create(binder);
+                try {
+                    binder.linkToDeath(this, 0);
+                } catch (RemoteException e) {
+                    // the service is already dead
+                    Billing.error("Billing service has died before it was connected", e);
+                    setService(null, true);
+                    return;
+                }
+                synchronized (this) {
+                    releaseBinder();
+                    mBinder = binder;
+                    mService = service;
+                }
+                setService(service, true);
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                if (!isCurrent(this)) {
+                    return;
+                }
+                final boolean alive;
+                synchronized (this) {
+                    alive = mService != null;
+                    releaseBinder();
+                }
+                if (!alive) {
+                    // death of the service has already been handled in binderDied
+                    return;
+                }
+                setService(null, false);
+            }
+
+            @Override
+            public void binderDied() {
+                final InAppBillingService service;
+                synchronized (this) {
+                    service = mService;
+                    mService = null;
+                    mBinder = null;
+                }
+                if (service != null) {
+                    onServiceDied(service);
+                }
+            }
+
+            void release() {
+                synchronized (this) {
+                    releaseBinder();
+                }
+            }
+
+            private void releaseBinder() {
+                Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+                if (mBinder != null) {
+                    mBinder.unlinkToDeath(this, 0);
+                    mBinder = null;
+                }
+                mService = null;
+            }
         }
     }
 }
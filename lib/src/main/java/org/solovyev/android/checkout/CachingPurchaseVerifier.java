@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link PurchaseVerifier} which remembers the purchases verified by another
+ * {@link PurchaseVerifier}. A purchase is identified by a digest of its data and signature, i.e.
+ * a purchase which has not changed since the last verification is not verified again. Only the
+ * successful verifications are remembered, the purchases which didn't pass the verification are
+ * verified every time. The number of remembered purchases is bounded: the least recently used
+ * ones are forgotten first.
+ * <p>
+ * Optionally, the digests can be saved in a file to be reused after the application restarts.
+ * The file is read on the first verification done on a background thread (until then only the
+ * purchases verified in the current process are known) and is written on a background thread.
+ * Note that anybody who is able to modify the file can make a purchase look verified.
+ * </p>
+ */
+@ThreadSafe
+final class CachingPurchaseVerifier implements PurchaseVerifier {
+
+    static final int DEFAULT_MAX_SIZE = 1000;
+    private static final String VERSION = "1";
+    private static final String CHARSET = "UTF-8";
+    private static final ThreadLocal<MessageDigest> sDigest = new ThreadLocal<>();
+
+    @Nonnull
+    private final PurchaseVerifier mVerifier;
+    @Nullable
+    private final File mFile;
+    @Nonnull
+    private final Executor mBackground;
+    @GuardedBy("mVerified")
+    @Nonnull
+    private final Map<String, Boolean> mVerified;
+    @GuardedBy("mVerified")
+    private boolean mLoaded;
+    @GuardedBy("mVerified")
+    private boolean mSavePending;
+
+    CachingPurchaseVerifier(@Nonnull PurchaseVerifier verifier, @Nullable File file) {
+        this(verifier, file, DEFAULT_MAX_SIZE, BackgroundThreads.getDefault().newSerialExecutor());
+    }
+
+    CachingPurchaseVerifier(@Nonnull PurchaseVerifier verifier, @Nullable File file, final int maxSize,
+            @Nonnull Executor background) {
+        mVerifier = verifier;
+        mFile = file;
+        mBackground = background;
+        mLoaded = file == null;
+        mVerified = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Nonnull
+    static String digest(@Nonnull Purchase purchase) {
+        MessageDigest digest = sDigest.get();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+            sDigest.set(digest);
+        }
+        try {
+            final byte[] data = purchase.data.getBytes(CHARSET);
+            // length prefix makes the boundary between data and signature unambiguous
+            digest.update(new byte[]{(byte) (data.length >>> 24), (byte) (data.length >>> 16), (byte) (data.length >>> 8), (byte) data.length});
+            digest.update(data);
+            digest.update(purchase.signature.getBytes(CHARSET));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return Base64.encode(digest.digest());
+    }
+
+    @Override
+    public void verify(@Nonnull final List<Purchase> purchases, @Nonnull final RequestListener<List<Purchase>> listener) {
+        if (!MainThread.isMainThread()) {
+            loadIfNeeded();
+        }
+        final List<String> digests = new ArrayList<>(purchases.size());
+        // known purchases must stay verified even if they are forgotten before the result is built
+        final boolean[] known = new boolean[purchases.size()];
+        final List<Purchase> unknown = new ArrayList<>();
+        synchronized (mVerified) {
+            for (int i = 0; i < purchases.size(); i++) {
+                final Purchase purchase = purchases.get(i);
+                final String digest = digest(purchase);
+                digests.add(digest);
+                known[i] = mVerified.get(digest) != null;
+                if (!known[i]) {
+                    unknown.add(purchase);
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            listener.onSuccess(purchases);
+            return;
+        }
+        mVerifier.verify(unknown, new RequestListener<List<Purchase>>() {
+            @Override
+            public void onSuccess(@Nonnull List<Purchase> verified) {
+                final Set<String> verifiedDigests = new HashSet<>(verified.size());
+                for (Purchase purchase : verified) {
+                    verifiedDigests.add(digest(purchase));
+                }
+                synchronized (mVerified) {
+                    for (String digest : verifiedDigests) {
+                        mVerified.put(digest, Boolean.TRUE);
+                    }
+                }
+                final List<Purchase> result = new ArrayList<>(purchases.size());
+                for (int i = 0; i < purchases.size(); i++) {
+                    if (known[i] || verifiedDigests.contains(digests.get(i))) {
+                        result.add(purchases.get(i));
+                    }
+                }
+                if (!verifiedDigests.isEmpty()) {
+                    saveLater();
+                }
+                listener.onSuccess(result);
+            }
+
+            @Override
+            public void onError(int response, @Nonnull Exception e) {
+                listener.onError(response, e);
+            }
+        });
+    }
+
+    private void loadIfNeeded() {
+        synchronized (mVerified) {
+            if (mLoaded) {
+                return;
+            }
+            mLoaded = true;
+            Check.isNotNull(mFile);
+            final List<String> digests = read(mFile);
+            for (String digest : digests) {
+                // entries verified in this process are more recent => they shouldn't be moved
+                if (!mVerified.containsKey(digest)) {
+                    mVerified.put(digest, Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    private void saveLater() {
+        if (mFile == null) {
+            return;
+        }
+        synchronized (mVerified) {
+            if (mSavePending) {
+                return;
+            }
+            mSavePending = true;
+        }
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> digests;
+                synchronized (mVerified) {
+                    mSavePending = false;
+                    // don't overwrite the saved digests before they are read
+                    loadIfNeeded();
+                    digests = new ArrayList<>(mVerified.keySet());
+                }
+                write(mFile, digests);
+            }
+        });
+    }
+
+    @Nonnull
+    private static List<String> read(@Nonnull File file) {
+        final List<String> digests = new ArrayList<>();
+        if (!file.exists()) {
+            return digests;
+        }
+        try {
+            final String[] lines = Files.read(file).split("\n");
+            if (!VERSION.equals(lines[0])) {
+                return digests;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                if (lines[i].length() > 0) {
+                    digests.add(lines[i]);
+                }
+            }
+        } catch (IOException e) {
+            Billing.error("Can't read verified purchases", e);
+        }
+        return digests;
+    }
+
+    private static void write(@Nonnull File file, @Nonnull List<String> digests) {
+        final StringBuilder sb = new StringBuilder(VERSION.length() + 1 + digests.size() * 46);
+        sb.append(VERSION).append('\n');
+        for (String digest : digests) {
+            sb.append(digest).append('\n');
+        }
+        try {
+            Files.write(file, sb.toString());
+        } catch (IOException e) {
+            Billing.error("Can't write verified purchases", e);
+        }
+    }
+}
@@ -29,7 +29,10 @@ import android.app.Service;
 import android.content.Context;
 import android.os.Build;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
 
@@ -113,6 +116,10 @@ public class Checkout {
     @GuardedBy("mLock")
     @Nonnull
     private State mState = State.INITIAL;
+    // started live inventories, see LiveInventory#start()
+    @GuardedBy("mLock")
+    @Nonnull
+    final List<LiveInventory> mLiveInventories = new ArrayList<>();
 
     Checkout(@Nullable Object tag, @Nonnull Billing billing) {
         mTag = tag;
@@ -203,7 +210,8 @@ public class Checkout {
             Check.isNull(mRequests, "Already started");
             mState = State.STARTED;
             mBilling.onCheckoutStarted();
-            mRequests = mBilling.getRequests(mTag);
+            // inventory loading produces many results at once, let's deliver them in batches
+            mRequests = mBilling.getRequests(mTag, true);
         }
         whenReady(listener == null ? new EmptyListener() {} : listener);
     }
@@ -213,42 +221,42 @@ public class Checkout {
      * finished yet or calls appropriate methods of the passed listener if some/all data has
      * already been loaded.
      * Depending on the current state of {@link Checkout} some methods of the passed listener might
-     * be called synchronously while other - asynchronously.
+     * be called synchronously while other - asynchronously. If {@link Billing} is connected and
+     * already knows that all products are supported the listener is notified synchronously.
      *
      * @param listener listener which is notified about the initial request's results
      */
     public void whenReady(@Nonnull final Listener listener) {
         Check.isMainThread();
 
+        final Billing.Requests requests;
         synchronized (mLock) {
             Check.isNotNull(mRequests);
-            final Billing.Requests requests = mRequests;
-
-            @Nonnull
-            final Set<String> loadingProducts = new HashSet<>(ProductTypes.ALL);
-            for (final String product : ProductTypes.ALL) {
-                requests.isBillingSupported(product, new RequestListener<Object>() {
-
-                    private void onBillingSupported(boolean supported) {
-                        listener.onReady(requests, product, supported);
-                        loadingProducts.remove(product);
-                        if (loadingProducts.isEmpty()) {
-                            listener.onReady(requests);
-                        }
-                    }
-
-                    @Override
-                    public void onSuccess(@Nonnull Object result) {
-                        onBillingSupported(true);
-                    }
-
-                    @Override
-                    public void onError(int response, @Nonnull Exception e) {
-                        onBillingSupported(false);
-                    }
-                });
+            requests = mRequests;
+            if (!isBillingKnownToBeSupported()) {
+                final Set<String> loadingProducts = new HashSet<>(ProductTypes.ALL);
+                for (final String product : ProductTypes.ALL) {
+                    requests.isBillingSupported(product, new BillingSupportedListener(requests, product, loadingProducts, listener));
+                }
+                return;
+            }
+        }
+
+        // no need to go through the request queue if the answers are already known. The
+        // listener is called outside of the lock as it might do some work, f.e. load purchases
+        for (String product : ProductTypes.ALL) {
+            listener.onReady(requests, product, true);
+        }
+        listener.onReady(requests);
+    }
+
+    private boolean isBillingKnownToBeSupported() {
+        for (String product : ProductTypes.ALL) {
+            if (!mBilling.isBillingKnownToBeSupported(product, Billing.V3)) {
+                return false;
             }
         }
+        return true;
     }
 
     private void checkIsNotStopped() {
@@ -279,6 +287,29 @@ public class Checkout {
      */
     @Nonnull
     public Inventory makeInventory() {
+        return makeInventory(FallingBackInventory.NO_HEDGING);
+    }
+
+    /**
+     * Same as {@link #makeInventory()} but the fall-back {@link Inventory} (if any) doesn't wait
+     * for the main {@link Inventory} to finish. Instead, it starts loading after
+     * <var>fallbackDelay</var> milliseconds and its products are used as soon as it is known that
+     * the main {@link Inventory} doesn't support some of the products. This reduces the loading
+     * time when billing is not available (f.e. the billing service can't be bound) at the cost of
+     * loading the fall-back data which might not be needed.
+     *
+     * @param fallbackDelay delay in milliseconds after which the fall-back {@link Inventory}
+     *                      starts loading, 0 to start both inventories at once
+     * @return inventory
+     */
+    @Nonnull
+    public Inventory makeHedgedInventory(long fallbackDelay) {
+        Check.isTrue(fallbackDelay >= 0, "Delay can't be negative");
+        return makeInventory(fallbackDelay);
+    }
+
+    @Nonnull
+    private Inventory makeInventory(long fallbackDelay) {
         Check.isMainThread();
 
         synchronized (mLock) {
@@ -290,11 +321,56 @@ public class Checkout {
         if (fallbackInventory == null) {
             inventory = new CheckoutInventory(this);
         } else {
-            inventory = new FallingBackInventory(this, fallbackInventory);
+            inventory = new FallingBackInventory(this, fallbackInventory, fallbackDelay);
         }
         return inventory;
     }
 
+    /**
+     * Same as {@link #makeInventory()} but the returned {@link Inventory} also saves the loaded
+     * products into <var>snapshot</var> file. On the next load the saved products are restored
+     * on a background thread and delivered to {@link Inventory.Callback} marked as stale (see
+     * {@link Inventory.Products#isStale()}) while the actual products are loading. Thus,
+     * {@link Inventory.Callback#onLoaded(Inventory.Products)} might be called twice: first, with
+     * the stale products and, then, with the actual ones. This allows to show the last known
+     * purchases without waiting for the billing service, f.e. right after the app starts.
+     * Note that the stale products are not verified again and should not be used to grant
+     * anything permanently.
+     *
+     * @param snapshot file where the products are saved, f.e. a file in
+     *                 {@link Context#getFilesDir()}
+     * @return inventory
+     */
+    @Nonnull
+    public Inventory makeInventory(@Nonnull File snapshot) {
+        return new SnapshotInventory(this, makeInventory(), new InventorySnapshot(snapshot), mOnLoadExecutor);
+    }
+
+    /**
+     * Creates a {@link LiveInventory} which loads the data defined by <var>request</var> and
+     * reloads the purchases every time they change. The returned object should be started with
+     * {@link LiveInventory#start()}, it is stopped automatically when this {@link Checkout} stops.
+     *
+     * @param request request that defines what data should be loaded
+     * @return live inventory
+     */
+    @Nonnull
+    public LiveInventory makeLiveInventory(@Nonnull Inventory.Request request) {
+        return new LiveInventory(this, makeInventory(), request);
+    }
+
+    void onLiveInventoryStarted(@Nonnull LiveInventory inventory) {
+        synchronized (mLock) {
+            mLiveInventories.add(inventory);
+        }
+    }
+
+    void onLiveInventoryStopped(@Nonnull LiveInventory inventory) {
+        synchronized (mLock) {
+            mLiveInventories.remove(inventory);
+        }
+    }
+
     /**
      * Method clears all listeners and cancels all pending requests. After this method is called no
      * more work can be done with this class unless {@link Checkout#start()} method is called
@@ -303,6 +379,15 @@ public class Checkout {
     public void stop() {
         Check.isMainThread();
 
+        final List<LiveInventory> liveInventories;
+        synchronized (mLock) {
+            liveInventories = new ArrayList<>(mLiveInventories);
+            mLiveInventories.clear();
+        }
+        for (LiveInventory inventory : liveInventories) {
+            inventory.stop();
+        }
+
         synchronized (mLock) {
             if (mState != State.INITIAL) {
                 mState = State.STOPPED;
@@ -376,4 +461,40 @@ public class Checkout {
             }
         }
     }
+
+    private static final class BillingSupportedListener implements RequestListener<Object> {
+        @Nonnull
+        private final BillingRequests mRequests;
+        @Nonnull
+        private final String mProduct;
+        @Nonnull
+        private final Set<String> mLoadingProducts;
+        @Nonnull
+        private final Listener mListener;
+
+        BillingSupportedListener(@Nonnull BillingRequests requests, @Nonnull String product, @Nonnull Set<String> loadingProducts, @Nonnull Listener listener) {
+            mRequests = requests;
+            mProduct = product;
+            mLoadingProducts = loadingProducts;
+            mListener = listener;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull Object result) {
+            onBillingSupported(true);
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            onBillingSupported(false);
+        }
+
+        private void onBillingSupported(boolean supported) {
+            mListener.onReady(mRequests, mProduct, supported);
+            mLoadingProducts.remove(mProduct);
+            if (mLoadingProducts.isEmpty()) {
+                mListener.onReady(mRequests);
+            }
+        }
+    }
 }
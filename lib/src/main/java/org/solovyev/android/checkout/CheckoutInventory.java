@@ -32,6 +32,10 @@ import javax.annotation.concurrent.GuardedBy;
  */
 final class CheckoutInventory extends BaseInventory {
 
+    /**
+     * Only the bookkeeping is done under the lock: the loaded data (which might be big) is
+     * processed (see {@link Product#setPurchases(List)}) on the thread it is delivered to.
+     */
     private class Worker implements Checkout.Listener, Runnable {
 
         @Nonnull
@@ -47,12 +51,13 @@ final class CheckoutInventory extends BaseInventory {
 
         @Override
         public void run() {
-            Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
-            // for each product we wait for:
-            // 1. onReady to be called
-            // 2. loadPurchased to be finished
-            // 3. loadSkus to be finished
-            mCount = ProductTypes.ALL.size() * 3;
+            synchronized (mLock) {
+                // for each product we wait for:
+                // 1. onReady to be called
+                // 2. loadPurchased to be finished
+                // 3. loadSkus to be finished
+                mCount = ProductTypes.ALL.size() * 3;
+            }
             mCheckout.whenReady(this);
         }
 
@@ -64,50 +69,83 @@ final class CheckoutInventory extends BaseInventory {
         public void onReady(@Nonnull BillingRequests requests, @Nonnull String productId,
                 boolean billingSupported) {
             final Product product = new Product(productId, billingSupported);
+            final Request request = mTask.getRequest();
+            final boolean cancelled = mTask.isCancelled();
+            final boolean loadPurchases = !cancelled && product.supported && request.shouldLoadPurchases(productId);
+            final boolean loadSkus = !cancelled && product.supported && request.shouldLoadSkus(productId);
+            final boolean done;
             synchronized (mLock) {
-                countDown();
                 mProducts.add(product);
-                if (!mTask.isCancelled() && product.supported && mTask.getRequest().shouldLoadPurchases(productId)) {
-                    loadPurchases(requests, product);
+                done = countDown(1 + (loadPurchases ? 0 : 1) + (loadSkus ? 0 : 1));
+            }
+            if (done) {
+                mTask.onDone(mProducts);
+                return;
+            }
+            if (loadPurchases) {
+                final List<Purchase> purchases = request.getReusablePurchases(productId);
+                if (purchases != null) {
+                    product.setPurchases(purchases);
+                    onLoaded();
                 } else {
-                    countDown(1);
+                    loadPurchases(requests, product);
                 }
-                if (!mTask.isCancelled() && product.supported && mTask.getRequest().shouldLoadSkus(productId)) {
-                    loadSkus(requests, product);
+            }
+            if (loadSkus) {
+                final List<Sku> skus = request.getReusableSkus(productId);
+                if (skus != null) {
+                    product.setSkus(skus);
+                    onLoaded();
                 } else {
-                    countDown(1);
+                    loadSkus(requests, product);
                 }
             }
         }
 
-        private void countDown() {
-            Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
-            countDown(1);
-        }
-
-        private void countDown(int count) {
+        /**
+         * @return true if everything has been loaded
+         */
+        private boolean countDown(int count) {
             Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
             mCount -= count;
             Check.isTrue(mCount >= 0, "Can't be negative");
-            if (mCount == 0) {
+            return mCount == 0;
+        }
+
+        /**
+         * Called when purchases or SKUs of a product have been loaded (successfully or not)
+         */
+        private void onLoaded() {
+            final boolean done;
+            synchronized (mLock) {
+                done = countDown(1);
+            }
+            if (done) {
+                // nothing is added to mProducts after the last count down
                 mTask.onDone(mProducts);
             }
         }
 
         private void loadPurchases(@Nonnull final BillingRequests requests,
                 @Nonnull final Product product) {
-            requests.getAllPurchases(product.id, synchronizedListener(new RequestListener<Purchases>() {
+            final RequestListener<Purchases> listener = new RequestListener<Purchases>() {
                 @Override
                 public void onSuccess(@Nonnull Purchases purchases) {
                     product.setPurchases(purchases.list);
-                    countDown();
+                    onLoaded();
                 }
 
                 @Override
                 public void onError(int response, @Nonnull Exception e) {
-                    countDown();
+                    onLoaded();
                 }
-            }));
+            };
+            if (requests instanceof Billing.Requests) {
+                // other inventories might be loading the same purchases
+                mCheckout.mBilling.getInventoryLoader().loadPurchases((Billing.Requests) requests, product.id, listener);
+            } else {
+                requests.getAllPurchases(product.id, listener);
+            }
         }
 
         private void loadSkus(@Nonnull BillingRequests requests, @Nonnull final Product product) {
@@ -115,23 +153,26 @@ final class CheckoutInventory extends BaseInventory {
             if (skuIds.isEmpty()) {
                 Billing.warning("There are no SKUs for \"" + product.id
                         + "\" product. No SKU information will be loaded");
-                synchronized (mLock) {
-                    countDown();
-                }
+                onLoaded();
                 return;
             }
-            requests.getSkus(product.id, skuIds, synchronizedListener(new RequestListener<Skus>() {
+            final RequestListener<Skus> listener = new RequestListener<Skus>() {
                 @Override
                 public void onSuccess(@Nonnull Skus skus) {
                     product.setSkus(skus.list);
-                    countDown();
+                    onLoaded();
                 }
 
                 @Override
                 public void onError(int response, @Nonnull Exception e) {
-                    countDown();
+                    onLoaded();
                 }
-            }));
+            };
+            if (requests instanceof Billing.Requests) {
+                mCheckout.mBilling.getInventoryLoader().loadSkus((Billing.Requests) requests, product.id, skuIds, listener);
+            } else {
+                requests.getSkus(product.id, skuIds, listener);
+            }
         }
     }
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Snapshot of the statistics of the connections to the billing service made by {@link Billing}.
+ *
+ * @see Billing#getConnectionStats()
+ */
+@Immutable
+public final class ConnectionStats {
+
+    /**
+     * Total number of the attempts to bind the billing service
+     */
+    public final int attempts;
+
+    /**
+     * Total number of the failed connections (including the connections which dropped shortly
+     * after they were established)
+     */
+    public final int failures;
+
+    /**
+     * Number of the failures since the last stable connection
+     */
+    public final int consecutiveFailures;
+
+    /**
+     * Time in milliseconds it took to bind the billing service last time
+     */
+    public final long lastBindLatency;
+
+    /**
+     * Average time in milliseconds it takes to bind the billing service
+     */
+    public final long averageBindLatency;
+
+    ConnectionStats(int attempts, int failures, int consecutiveFailures, long lastBindLatency, long averageBindLatency) {
+        this.attempts = attempts;
+        this.failures = failures;
+        this.consecutiveFailures = consecutiveFailures;
+        this.lastBindLatency = lastBindLatency;
+        this.averageBindLatency = averageBindLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats{attempts=" + attempts
+                + ", failures=" + failures
+                + ", consecutiveFailures=" + consecutiveFailures
+                + ", lastBindLatency=" + lastBindLatency
+                + ", averageBindLatency=" + averageBindLatency + "}";
+    }
+}
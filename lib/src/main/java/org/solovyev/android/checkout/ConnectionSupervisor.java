@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Keeps track of the connection attempts made by {@link Billing} and decides whether a new
+ * attempt is allowed. After several consecutive failures (either the billing service can't be
+ * bound or it drops shortly after it was bound) the connection attempts are suspended for a
+ * period of time which grows exponentially with each failure. A random jitter is added to the
+ * period in order to avoid synchronized retries. While the attempts are suspended {@link Billing}
+ * fails all the pending requests with {@link ResponseCodes#SERVICE_NOT_CONNECTED} instead of
+ * binding the service over and over again.
+ * <p>
+ * The first failure is not penalized: a transient problem (f.e. Play Store being updated) should
+ * not prevent an immediate retry.
+ * </p>
+ * <p>
+ * <b>Note</b>: this class is not thread-safe, {@link Billing} accesses it only while holding its
+ * lock.
+ * </p>
+ */
+@NotThreadSafe
+final class ConnectionSupervisor {
+
+    // delay after the second consecutive failure, doubled after every next failure
+    static final long INITIAL_DELAY = Billing.SECOND;
+    static final long MAX_DELAY = Billing.MINUTE;
+    // connection which drops earlier than this is considered to be failed
+    static final long STABLE_CONNECTION = 10L * Billing.SECOND;
+
+    @Nonnull
+    private final Random mRandom;
+    private int mAttempts;
+    private int mFailures;
+    private int mConsecutiveFailures;
+    private int mConnections;
+    private long mConnectingSince;
+    private long mConnectedSince;
+    private long mNextAttemptAt;
+    private long mLastBindLatency;
+    private long mTotalBindLatency;
+
+    ConnectionSupervisor() {
+        this(new Random());
+    }
+
+    ConnectionSupervisor(@Nonnull Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * @param now current time
+     * @return time in milliseconds left until the next connection attempt is allowed, 0 if the
+     * connection can be established right away
+     */
+    long getCoolDown(long now) {
+        return Math.max(0, mNextAttemptAt - now);
+    }
+
+    void onConnecting(long now) {
+        mAttempts++;
+        mConnectingSince = now;
+    }
+
+    void onConnected(long now) {
+        mConnections++;
+        mConnectedSince = now;
+        mLastBindLatency = Math.max(0, now - mConnectingSince);
+        mTotalBindLatency += mLastBindLatency;
+    }
+
+    void onFailed(long now) {
+        mFailures++;
+        mConsecutiveFailures++;
+        mNextAttemptAt = now + getDelay(mConsecutiveFailures);
+    }
+
+    /**
+     * Should be called when the established connection is closed.
+     *
+     * @param now    current time
+     * @param abrupt true if the connection was closed by the system (f.e. the billing service
+     *               has died), false if it was closed on purpose
+     */
+    void onDisconnected(long now, boolean abrupt) {
+        if (abrupt && now - mConnectedSince < STABLE_CONNECTION) {
+            onFailed(now);
+        } else {
+            mConsecutiveFailures = 0;
+        }
+    }
+
+    long getDelay(int consecutiveFailures) {
+        if (consecutiveFailures <= 1) {
+            return 0;
+        }
+        final int shift = Math.min(consecutiveFailures - 2, 30);
+        final long delay = Math.min(MAX_DELAY, INITIAL_DELAY << shift);
+        // "equal jitter": at least a half of the delay is always waited
+        return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    @Nonnull
+    ConnectionStats getStats() {
+        return new ConnectionStats(mAttempts, mFailures, mConsecutiveFailures, mLastBindLatency,
+                mConnections == 0 ? 0 : mTotalBindLatency / mConnections);
+    }
+}
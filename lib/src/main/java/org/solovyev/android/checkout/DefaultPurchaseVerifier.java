@@ -24,6 +24,7 @@ package org.solovyev.android.checkout;
 
 import static android.text.TextUtils.isEmpty;
 
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -31,6 +32,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Checks a purchase signature using the default Android implementation - {@link Security} class.
@@ -46,11 +48,33 @@ class DefaultPurchaseVerifier implements PurchaseVerifier {
 
     @Nonnull
     private final String mPublicKey;
+    // parsed lazily (the key is not needed if there is nothing to verify) and then reused
+    @Nullable
+    private volatile PublicKey mParsedKey;
 
     public DefaultPurchaseVerifier(@Nonnull String publicKey) {
         mPublicKey = publicKey;
     }
 
+    @Nonnull
+    private PublicKey getPublicKey() {
+        PublicKey key = mParsedKey;
+        if (key == null) {
+            // a race here might only cause the key to be parsed twice
+            key = Security.generatePublicKey(mPublicKey);
+            mParsedKey = key;
+        }
+        return key;
+    }
+
+    private boolean verify(@Nonnull Purchase purchase) {
+        if (isEmpty(purchase.data) || isEmpty(purchase.signature) || isEmpty(mPublicKey)) {
+            // Security will report the missing data
+            return Security.verifyPurchase(mPublicKey, purchase.data, purchase.signature);
+        }
+        return Security.verifyPurchase(getPublicKey(), purchase.data, purchase.signature);
+    }
+
     @Override
     public void verify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
         final List<Purchase> verifiedPurchases = new ArrayList<Purchase>(purchases.size());
@@ -61,7 +85,7 @@ class DefaultPurchaseVerifier implements PurchaseVerifier {
                 verifiedPurchases.add(purchase);
                 continue;
             }
-            if (Security.verifyPurchase(mPublicKey, purchase.data, purchase.signature)) {
+            if (verify(purchase)) {
                 verifiedPurchases.add(purchase);
                 continue;
             }
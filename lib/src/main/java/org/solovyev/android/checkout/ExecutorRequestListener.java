@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Class dispatches all <var>listener</var> method calls on the given executor. As an arbitrary
+ * {@link Executor} can't remove the tasks submitted to it the cancellation is done by skipping
+ * the listener calls which haven't been delivered yet.
+ *
+ * @param <R> type of the result
+ */
+final class ExecutorRequestListener<R> extends RequestListenerWrapper<R> {
+
+    @Nonnull
+    private final Executor mExecutor;
+
+    private volatile boolean mCancelled;
+
+    ExecutorRequestListener(@Nonnull Executor executor, @Nonnull RequestListener<R> listener) {
+        super(listener);
+        mExecutor = executor;
+    }
+
+    @Override
+    public void onSuccess(@Nonnull final R result) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onSuccess(result);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onError(final int response, @Nonnull final Exception e) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    mListener.onError(response, e);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onCancel() {
+        mCancelled = true;
+    }
+}
@@ -22,14 +22,32 @@
 
 package org.solovyev.android.checkout;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Inventory which falls back to fallback {@link Inventory} if one of the products is not
  * supported.
+ * <p>
+ * By default the fallback {@link Inventory} is loaded only after the main one has finished. In
+ * the hedged mode (see {@link #FallingBackInventory(Checkout, Inventory, long)}) the fallback
+ * {@link Inventory} starts loading after a delay even if the main one is still loading. If it
+ * finishes first its products are delivered as stale (see {@link Products#isStale()}) and are
+ * replaced once the main {@link Inventory} has finished. Thus, if billing is not available the
+ * user doesn't have to wait for both inventories one after another.
  */
 class FallingBackInventory extends BaseInventory {
 
+    /**
+     * Fallback delay which disables hedging: the fallback {@link Inventory} is loaded only if
+     * needed
+     */
+    static final long NO_HEDGING = -1;
+
     private class Worker implements Runnable {
 
         @Nonnull
@@ -37,7 +55,26 @@ class FallingBackInventory extends BaseInventory {
         @Nonnull
         private final FallbackCallback mFallbackCallback = new FallbackCallback();
         @Nonnull
+        private final Runnable mStartFallback = new Runnable() {
+            @Override
+            public void run() {
+                mFallbackCallback.load();
+            }
+        };
+        @Nonnull
         private final Task mTask;
+        @GuardedBy("mLock")
+        private boolean mMainLoaded;
+        @GuardedBy("mLock")
+        private boolean mFallbackStarted;
+        @GuardedBy("mLock")
+        private boolean mFallbackCancelled;
+        @GuardedBy("mLock")
+        private int mFallbackTaskId = -1;
+        // products loaded by the fallback inventory before the main one has finished
+        @GuardedBy("mLock")
+        @Nullable
+        private Products mFallbackProducts;
 
         Worker(@Nonnull Task task) {
             mTask = task;
@@ -46,6 +83,11 @@ class FallingBackInventory extends BaseInventory {
         @Override
         public void run() {
             mMainCallback.load();
+            if (mFallbackDelay == 0) {
+                mFallbackCallback.load();
+            } else if (mFallbackDelay > 0) {
+                mHandler.postDelayed(mStartFallback, mFallbackDelay);
+            }
         }
 
         private class MainCallback implements Callback {
@@ -53,6 +95,16 @@ class FallingBackInventory extends BaseInventory {
             @Override
             public void onLoaded(@Nonnull Products products) {
                 if (mTask.onMaybeDone(products)) {
+                    mFallbackCallback.cancel();
+                    return;
+                }
+                final Products fallbackProducts;
+                synchronized (mLock) {
+                    mMainLoaded = true;
+                    fallbackProducts = mFallbackProducts;
+                }
+                if (fallbackProducts != null) {
+                    mTask.onDone(fallbackProducts);
                     return;
                 }
                 mFallbackCallback.load();
@@ -67,11 +119,54 @@ class FallingBackInventory extends BaseInventory {
 
             @Override
             public void onLoaded(@Nonnull Products products) {
-                mTask.onDone(products);
+                final boolean mainLoaded;
+                synchronized (mLock) {
+                    mainLoaded = mMainLoaded;
+                    if (!mainLoaded) {
+                        // products of the main inventory have priority => wait for them
+                        mFallbackProducts = products;
+                    }
+                }
+                if (mainLoaded) {
+                    mTask.onDone(products);
+                } else {
+                    // let the user see something while the main inventory is loading
+                    mTask.onStaleLoaded(toStale(products));
+                }
             }
 
             public void load() {
-                mFallbackInventory.load(mTask.getRequest(), this);
+                mHandler.removeCallbacks(mStartFallback);
+                synchronized (mLock) {
+                    if (mFallbackStarted || mTask.isCancelled()) {
+                        return;
+                    }
+                    mFallbackStarted = true;
+                }
+                final int id = mFallbackInventory.load(mTask.getRequest(), this);
+                final boolean cancelled;
+                synchronized (mLock) {
+                    mFallbackTaskId = id;
+                    cancelled = mFallbackCancelled;
+                }
+                if (cancelled) {
+                    // the main inventory has finished while the fallback was starting
+                    mFallbackInventory.cancel(id);
+                }
+            }
+
+            public void cancel() {
+                mHandler.removeCallbacks(mStartFallback);
+                final int id;
+                synchronized (mLock) {
+                    // prevents the fallback from being started later
+                    mFallbackStarted = true;
+                    mFallbackCancelled = true;
+                    id = mFallbackTaskId;
+                }
+                if (id >= 0) {
+                    mFallbackInventory.cancel(id);
+                }
             }
         }
     }
@@ -80,11 +175,28 @@ class FallingBackInventory extends BaseInventory {
     private final CheckoutInventory mMainInventory;
     @Nonnull
     private final Inventory mFallbackInventory;
+    private final long mFallbackDelay;
+    @Nonnull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     public FallingBackInventory(@Nonnull Checkout checkout, @Nonnull Inventory fallbackInventory) {
+        this(checkout, fallbackInventory, NO_HEDGING);
+    }
+
+    /**
+     * @param checkout          checkout
+     * @param fallbackInventory inventory to be used for the products which are not supported by
+     *                          {@link CheckoutInventory}
+     * @param fallbackDelay     delay in milliseconds after which the fallback inventory starts
+     *                          loading even if the main one hasn't finished yet. 0 to load both
+     *                          at once, {@link #NO_HEDGING} to load the fallback inventory only if
+     *                          it is needed
+     */
+    public FallingBackInventory(@Nonnull Checkout checkout, @Nonnull Inventory fallbackInventory, long fallbackDelay) {
         super(checkout);
         mMainInventory = new CheckoutInventory(checkout);
         mFallbackInventory = fallbackInventory;
+        mFallbackDelay = fallbackDelay;
     }
 
     @Nonnull
@@ -92,4 +204,12 @@ class FallingBackInventory extends BaseInventory {
     protected Runnable createWorker(@Nonnull Task task) {
         return new Worker(task);
     }
+
+    @Nonnull
+    private static Products toStale(@Nonnull Products products) {
+        final Products stale = new Products();
+        stale.merge(products);
+        stale.mStale = true;
+        return stale;
+    }
 }
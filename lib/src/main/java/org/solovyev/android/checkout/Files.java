@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Utility class that reads and writes the files of the library (inventory snapshots, imported
+ * Robotmedia purchases, verified purchases). Files are read and written in UTF-8.
+ */
+final class Files {
+
+    private static final String CHARSET = "UTF-8";
+
+    private Files() {
+        throw new AssertionError();
+    }
+
+    @Nonnull
+    static String read(@Nonnull File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replaces the contents of <var>file</var> atomically: the data is written into a temporary
+     * file which is then renamed, i.e. a concurrent {@link #read(File)} either sees the old or the
+     * new contents.
+     */
+    static void write(@Nonnull File file, @Nonnull String data) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            final OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(data.getBytes(CHARSET));
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can't rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw e;
+        }
+    }
+}
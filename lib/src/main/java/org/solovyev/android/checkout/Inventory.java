@@ -55,6 +55,11 @@ public interface Inventory {
      * to be loaded is defined by {@link Request} argument. For each load request a task is created
      * whose identifier is returned in this method. The task can be later cancelled via
      * {@link #cancel(int)} method.
+     * <p>
+     * {@link Callback} is never called before this method returns unless the products are loaded
+     * synchronously on the calling thread (f.e. if everything is cached), thus, the returned task
+     * can be cancelled right after this method returns.
+     * </p>
      * @param request request definition
      * @return task identifier
      */
@@ -99,6 +104,8 @@ public interface Inventory {
 
         @Nonnull
         private final Map<String, Inventory.Product> mMap = new HashMap<>();
+        // true if the products were not loaded but restored from a snapshot
+        boolean mStale;
 
         Products() {
             for (String product : ProductTypes.ALL) {
@@ -140,6 +147,20 @@ public interface Inventory {
             return mMap.size();
         }
 
+        /**
+         * Stale products are delivered to {@link Callback} before the actual data is loaded,
+         * see {@link Checkout#makeInventory(java.io.File)}. Such products contain the data which
+         * was loaded the last time and might be outdated (f.e. a subscription might be expired).
+         * Products loaded by the fallback inventory while Billing is still loading are delivered
+         * as stale too.
+         *
+         * @return true if these products were restored from the previously saved state or were
+         * loaded by the fallback inventory before Billing has answered
+         */
+        public boolean isStale() {
+            return mStale;
+        }
+
         void merge(@Nonnull Products products) {
             for (Map.Entry<String, Product> entry : mMap.entrySet()) {
                 if (!entry.getValue().supported) {
@@ -186,6 +207,17 @@ public interface Inventory {
         @Nonnull
         final List<Sku> mSkus = new ArrayList<>();
 
+        // true if the purchases/SKUs were successfully loaded (even if the lists are empty)
+        boolean mPurchasesLoaded;
+        boolean mSkusLoaded;
+
+        // indices are built lazily on the first lookup, the lists can't be changed after the
+        // product is delivered to Callback
+        @Nullable
+        private volatile PurchasesIndex mPurchasesIndex;
+        @Nullable
+        private volatile Map<String, Sku> mSkusIndex;
+
         Product(@Nonnull String id, boolean supported) {
             ProductTypes.checkSupported(id);
             this.id = id;
@@ -206,7 +238,12 @@ public interface Inventory {
 
         @Nullable
         public Purchase getPurchaseInState(@Nonnull String sku, @Nonnull Purchase.State state) {
-            return Purchases.getPurchaseInState(mPurchases, sku, state);
+            PurchasesIndex index = mPurchasesIndex;
+            if (index == null) {
+                index = PurchasesIndex.create(mPurchases);
+                mPurchasesIndex = index;
+            }
+            return index.get(sku, state);
         }
 
         @Nullable
@@ -227,6 +264,8 @@ public interface Inventory {
             Check.isTrue(mPurchases.isEmpty(), "Must be called only once");
             mPurchases.addAll(Purchases.neutralize(purchases));
             sort(mPurchases, PurchaseComparator.latestFirst());
+            mPurchasesLoaded = true;
+            mPurchasesIndex = null;
         }
 
         /**
@@ -240,16 +279,18 @@ public interface Inventory {
         void setSkus(@Nonnull List<Sku> skus) {
             Check.isTrue(mSkus.isEmpty(), "Must be called only once");
             mSkus.addAll(skus);
+            mSkusLoaded = true;
+            mSkusIndex = null;
         }
 
         @Nullable
         public Sku getSku(@Nonnull String sku) {
-            for (Sku s : mSkus) {
-                if (s.id.code.equals(sku)) {
-                    return s;
-                }
+            Map<String, Sku> index = mSkusIndex;
+            if (index == null) {
+                index = Skus.index(mSkus);
+                mSkusIndex = index;
             }
-            return null;
+            return index.get(sku);
         }
     }
 
@@ -262,6 +303,12 @@ public interface Inventory {
         private final Map<String, List<String>> mSkus = new HashMap<>();
         // set of products for which purchase information is loaded
         private final Set<String> mProducts = new HashSet<>();
+        // previously loaded products which data can be reused
+        @Nullable
+        private Products mPrevious;
+        // products for which the data in mPrevious is not valid anymore
+        private final Set<String> mChangedPurchases = new HashSet<>();
+        private final Set<String> mChangedSkus = new HashSet<>();
 
         private Request() {
             for (String product : ProductTypes.ALL) {
@@ -274,6 +321,9 @@ public interface Inventory {
             final Request copy = new Request();
             copy.mSkus.putAll(mSkus);
             copy.mProducts.addAll(mProducts);
+            copy.mPrevious = mPrevious;
+            copy.mChangedPurchases.addAll(mChangedPurchases);
+            copy.mChangedSkus.addAll(mChangedSkus);
             return copy;
         }
 
@@ -365,5 +415,100 @@ public interface Inventory {
         List<String> getSkus(@Nonnull String product) {
             return mSkus.get(product);
         }
+
+        /**
+         * Makes {@link Inventory} to reuse the data from the <var>previous</var> products instead
+         * of loading it again. Only the data which is missing in the <var>previous</var> products
+         * or which was marked as changed via {@link #purchasesChanged(String)} or
+         * {@link #skusChanged(String)} is loaded. For example, after a consumption only in-app
+         * purchases need to be reloaded:
+         * <pre>
+         * request.reuse(products).purchasesChanged(ProductTypes.IN_APP)
+         * </pre>
+         * Note that the cache is not consulted for the reused data, i.e. it is up to the caller
+         * to mark everything that might have changed.
+         *
+         * @param previous previously loaded products
+         * @return this request
+         */
+        @Nonnull
+        public Request reuse(@Nonnull Products previous) {
+            mPrevious = previous;
+            return this;
+        }
+
+        /**
+         * Marks the purchases of the given <var>product</var> as changed, i.e. they will be
+         * loaded even if they are present in the products passed to {@link #reuse(Products)}.
+         *
+         * @param product product
+         * @return this request
+         */
+        @Nonnull
+        public Request purchasesChanged(@Nonnull String product) {
+            ProductTypes.checkSupported(product);
+            mChangedPurchases.add(product);
+            return this;
+        }
+
+        /**
+         * Marks the SKUs of the given <var>product</var> as changed, i.e. they will be loaded
+         * even if they are present in the products passed to {@link #reuse(Products)}.
+         *
+         * @param product product
+         * @return this request
+         */
+        @Nonnull
+        public Request skusChanged(@Nonnull String product) {
+            ProductTypes.checkSupported(product);
+            mChangedSkus.add(product);
+            return this;
+        }
+
+        @Nullable
+        private Product getPrevious(@Nonnull String product) {
+            if (mPrevious == null) {
+                return null;
+            }
+            final Product previous = mPrevious.get(product);
+            return previous.supported ? previous : null;
+        }
+
+        /**
+         * @param product product
+         * @return previously loaded purchases which are still valid, null if purchases must be
+         * loaded
+         */
+        @Nullable
+        List<Purchase> getReusablePurchases(@Nonnull String product) {
+            final Product previous = getPrevious(product);
+            if (previous == null || !previous.mPurchasesLoaded || mChangedPurchases.contains(product)) {
+                return null;
+            }
+            return previous.mPurchases;
+        }
+
+        /**
+         * @param product product
+         * @return previously loaded SKUs which are still valid, null if SKUs must be loaded
+         */
+        @Nullable
+        List<Sku> getReusableSkus(@Nonnull String product) {
+            final Product previous = getPrevious(product);
+            if (previous == null || !previous.mSkusLoaded || mChangedSkus.contains(product)) {
+                return null;
+            }
+            final List<String> skuIds = mSkus.get(product);
+            final List<Sku> skus = new ArrayList<>(skuIds.size());
+            for (String skuId : skuIds) {
+                final Sku sku = previous.getSku(skuId);
+                if (sku == null) {
+                    // not loaded previously (or doesn't exist), let's ask for it
+                    return null;
+                }
+                skus.add(sku);
+            }
+            return skus;
+        }
     }
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Loads purchases and SKU details for the {@link Inventory}s of all the {@link Checkout}s created
+ * with the same {@link Billing}. Identical requests which are in flight at the same time are
+ * merged: if purchases of a product are already being loaded a new caller just waits for the
+ * result; if some of the requested SKUs are already being loaded only the missing ones are
+ * requested from the billing service. Each caller gets a result which contains only the data it
+ * has asked for.
+ * <p>
+ * Results are delivered on the delivery thread of the caller's {@link Billing.Requests} and
+ * callers are detached from the loads when {@link Billing.Requests#cancelAll()} is called.
+ * A load is cancelled as soon as nobody waits for it.
+ */
+@ThreadSafe
+final class InventoryLoader {
+
+    @Nonnull
+    private final Billing mBilling;
+    @Nonnull
+    private final BillingRequests mRequests;
+    @Nonnull
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Map<String, Flight<Purchases>> mPurchases = new HashMap<>();
+    // purchases flights started before the purchases have changed, see #onPurchasesChanged()
+    @GuardedBy("mLock")
+    @Nonnull
+    private final List<Flight<Purchases>> mDetachedPurchases = new ArrayList<>();
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Map<String, List<Flight<Skus>>> mSkus = new HashMap<>();
+
+    InventoryLoader(@Nonnull Billing billing) {
+        mBilling = billing;
+        // listeners are called on the request thread: the results are forwarded to the callers'
+        // threads anyway
+        mRequests = billing.newRequestsBuilder().withTag(this).onBackgroundThread().create();
+    }
+
+    /**
+     * Same as {@link BillingRequests#getAllPurchases(String, RequestListener)} but shares the
+     * result with the other callers which load the purchases of the same product at the same time.
+     *
+     * @param requests requests on behalf of which the purchases are loaded
+     * @param product  product type
+     * @param listener listener to be notified
+     */
+    void loadPurchases(@Nonnull Billing.Requests requests, @Nonnull String product,
+            @Nonnull RequestListener<Purchases> listener) {
+        final PurchasesWaiter waiter = new PurchasesWaiter(requests, listener);
+        final Flight<Purchases> flight;
+        synchronized (mLock) {
+            final Flight<Purchases> existing = mPurchases.get(product);
+            if (existing != null) {
+                existing.mWaiters.add(waiter);
+                waiter.mParts++;
+                return;
+            }
+            flight = new Flight<>(product, null);
+            flight.mWaiters.add(waiter);
+            waiter.mParts++;
+            mPurchases.put(product, flight);
+        }
+        flight.setRequestId(mRequests.getAllPurchases(product, flight));
+    }
+
+    /**
+     * Same as {@link BillingRequests#getSkus(String, List, RequestListener)} but requests from the
+     * billing service only the SKUs which are not already being loaded.
+     *
+     * @param requests requests on behalf of which the SKUs are loaded
+     * @param product  product type
+     * @param skus     SKUs to be loaded
+     * @param listener listener to be notified, gets the requested SKUs only
+     */
+    void loadSkus(@Nonnull Billing.Requests requests, @Nonnull String product,
+            @Nonnull List<String> skus, @Nonnull RequestListener<Skus> listener) {
+        Check.isNotEmpty(skus);
+        final Set<String> missing = new LinkedHashSet<>(skus);
+        final SkusWaiter waiter = new SkusWaiter(requests, product, new ArrayList<>(missing), listener);
+        final Flight<Skus> flight;
+        synchronized (mLock) {
+            List<Flight<Skus>> flights = mSkus.get(product);
+            if (flights == null) {
+                flights = new ArrayList<>();
+                mSkus.put(product, flights);
+            }
+            for (Flight<Skus> existing : flights) {
+                if (missing.removeAll(existing.mSkus)) {
+                    existing.mWaiters.add(waiter);
+                    waiter.mParts++;
+                }
+            }
+            if (missing.isEmpty()) {
+                return;
+            }
+            flight = new Flight<>(product, new ArrayList<>(missing));
+            flight.mWaiters.add(waiter);
+            waiter.mParts++;
+            flights.add(flight);
+        }
+        flight.setRequestId(mRequests.getSkus(product, flight.mSkus, flight));
+    }
+
+    /**
+     * Makes the purchases which are being loaded unavailable for the new callers: the loads
+     * might have been started before the purchases have changed and, thus, might return
+     * outdated purchases. The callers which already wait for these loads still get their results.
+     */
+    void onPurchasesChanged() {
+        synchronized (mLock) {
+            mDetachedPurchases.addAll(mPurchases.values());
+            mPurchases.clear();
+        }
+    }
+
+    /**
+     * Detaches all the callers which use <var>tag</var> from the loads. Loads which have nobody
+     * waiting for them are cancelled.
+     *
+     * @param tag tag of {@link Billing.Requests}
+     */
+    void cancelAll(@Nullable Object tag) {
+        final List<Waiter<?>> waiters = new ArrayList<>();
+        final List<Flight<?>> flights = new ArrayList<>();
+        synchronized (mLock) {
+            for (Iterator<Flight<Purchases>> it = mPurchases.values().iterator(); it.hasNext(); ) {
+                final Flight<Purchases> flight = it.next();
+                if (flight.removeWaiters(tag, waiters)) {
+                    it.remove();
+                    flights.add(flight);
+                }
+            }
+            for (Iterator<Flight<Purchases>> it = mDetachedPurchases.iterator(); it.hasNext(); ) {
+                final Flight<Purchases> flight = it.next();
+                if (flight.removeWaiters(tag, waiters)) {
+                    it.remove();
+                    flights.add(flight);
+                }
+            }
+            for (List<Flight<Skus>> list : mSkus.values()) {
+                for (Iterator<Flight<Skus>> it = list.iterator(); it.hasNext(); ) {
+                    final Flight<Skus> flight = it.next();
+                    if (flight.removeWaiters(tag, waiters)) {
+                        it.remove();
+                        flights.add(flight);
+                    }
+                }
+            }
+        }
+        for (Waiter<?> waiter : waiters) {
+            waiter.cancel();
+        }
+        for (Flight<?> flight : flights) {
+            flight.cancelRequest();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void remove(@Nonnull Flight<?> flight) {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        if (flight.mSkus == null) {
+            if (mPurchases.get(flight.mProduct) == flight) {
+                mPurchases.remove(flight.mProduct);
+            } else {
+                mDetachedPurchases.remove(flight);
+            }
+            return;
+        }
+        final List<Flight<Skus>> flights = mSkus.get(flight.mProduct);
+        if (flights != null) {
+            flights.remove(flight);
+        }
+    }
+
+    /**
+     * Request to the billing service shared by several {@link Waiter}s.
+     */
+    private final class Flight<R> implements CancellableRequestListener<R> {
+        @Nonnull
+        private final String mProduct;
+        // SKUs requested from the billing service, null if purchases are loaded
+        @Nullable
+        private final List<String> mSkus;
+        @GuardedBy("mLock")
+        @Nonnull
+        private final List<Waiter<R>> mWaiters = new ArrayList<>();
+        @GuardedBy("mLock")
+        private int mRequestId = -1;
+        @GuardedBy("mLock")
+        private boolean mFinished;
+
+        Flight(@Nonnull String product, @Nullable List<String> skus) {
+            mProduct = product;
+            mSkus = skus;
+        }
+
+        void setRequestId(int requestId) {
+            final boolean cancelled;
+            synchronized (mLock) {
+                mRequestId = requestId;
+                cancelled = mFinished && mWaiters.isEmpty();
+            }
+            if (cancelled) {
+                // everybody has left before the request was sent
+                mBilling.cancel(requestId);
+            }
+        }
+
+        /**
+         * Removes the waiters which use <var>tag</var>.
+         *
+         * @return true if nobody waits for this flight anymore
+         */
+        @GuardedBy("mLock")
+        boolean removeWaiters(@Nullable Object tag, @Nonnull List<Waiter<?>> removed) {
+            Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+            for (Iterator<Waiter<R>> it = mWaiters.iterator(); it.hasNext(); ) {
+                final Waiter<R> waiter = it.next();
+                if (waiter.hasTag(tag)) {
+                    it.remove();
+                    removed.add(waiter);
+                }
+            }
+            if (mWaiters.isEmpty()) {
+                mFinished = true;
+                return true;
+            }
+            return false;
+        }
+
+        void cancelRequest() {
+            final int requestId;
+            synchronized (mLock) {
+                requestId = mRequestId;
+            }
+            if (requestId >= 0) {
+                mBilling.cancel(requestId);
+            }
+        }
+
+        @Nullable
+        private List<Waiter<R>> finish() {
+            synchronized (mLock) {
+                if (mFinished) {
+                    return null;
+                }
+                mFinished = true;
+                remove(this);
+                return new ArrayList<>(mWaiters);
+            }
+        }
+
+        @Override
+        public void onSuccess(@Nonnull R result) {
+            final List<Waiter<R>> waiters = finish();
+            if (waiters == null) {
+                return;
+            }
+            for (Waiter<R> waiter : waiters) {
+                waiter.onPartLoaded(result);
+            }
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            final List<Waiter<R>> waiters = finish();
+            if (waiters == null) {
+                return;
+            }
+            for (Waiter<R> waiter : waiters) {
+                waiter.onError(response, e);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            final List<Waiter<R>> waiters = finish();
+            if (waiters == null) {
+                return;
+            }
+            for (Waiter<R> waiter : waiters) {
+                waiter.cancel();
+            }
+        }
+    }
+
+    /**
+     * Caller waiting for one or several {@link Flight}s.
+     */
+    private abstract class Waiter<R> {
+        @Nullable
+        private final Object mTag;
+        @Nonnull
+        private final Executor mExecutor;
+        @Nonnull
+        private final RequestListener<R> mListener;
+        @GuardedBy("mLock")
+        int mParts;
+        @GuardedBy("mLock")
+        private boolean mDone;
+
+        Waiter(@Nonnull Billing.Requests requests, @Nonnull RequestListener<R> listener) {
+            mTag = requests.getTag();
+            mExecutor = requests.getDeliveryExecutor();
+            mListener = listener;
+        }
+
+        boolean hasTag(@Nullable Object tag) {
+            return mTag == null ? tag == null : mTag.equals(tag);
+        }
+
+        void onPartLoaded(@Nonnull R part) {
+            final R result;
+            synchronized (mLock) {
+                if (mDone) {
+                    return;
+                }
+                addPart(part);
+                mParts--;
+                if (mParts > 0) {
+                    return;
+                }
+                mDone = true;
+                result = getResult();
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mListener.onSuccess(result);
+                }
+            });
+        }
+
+        void onError(final int response, @Nonnull final Exception e) {
+            synchronized (mLock) {
+                if (mDone) {
+                    return;
+                }
+                mDone = true;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mListener.onError(response, e);
+                }
+            });
+        }
+
+        void cancel() {
+            synchronized (mLock) {
+                if (mDone) {
+                    return;
+                }
+                mDone = true;
+            }
+            Billing.cancel(mListener);
+        }
+
+        @GuardedBy("mLock")
+        protected abstract void addPart(@Nonnull R part);
+
+        @GuardedBy("mLock")
+        @Nonnull
+        protected abstract R getResult();
+    }
+
+    private final class PurchasesWaiter extends Waiter<Purchases> {
+        @GuardedBy("mLock")
+        @Nullable
+        private Purchases mPurchases;
+
+        PurchasesWaiter(@Nonnull Billing.Requests requests, @Nonnull RequestListener<Purchases> listener) {
+            super(requests, listener);
+        }
+
+        @Override
+        protected void addPart(@Nonnull Purchases part) {
+            mPurchases = part;
+        }
+
+        @Nonnull
+        @Override
+        protected Purchases getResult() {
+            Check.isNotNull(mPurchases);
+            return mPurchases;
+        }
+    }
+
+    private final class SkusWaiter extends Waiter<Skus> {
+        @Nonnull
+        private final String mProduct;
+        @Nonnull
+        private final List<String> mSkus;
+        @GuardedBy("mLock")
+        @Nonnull
+        private final Map<String, Sku> mLoaded = new HashMap<>();
+
+        SkusWaiter(@Nonnull Billing.Requests requests, @Nonnull String product,
+                @Nonnull List<String> skus, @Nonnull RequestListener<Skus> listener) {
+            super(requests, listener);
+            mProduct = product;
+            mSkus = skus;
+        }
+
+        @Override
+        protected void addPart(@Nonnull Skus part) {
+            for (Sku sku : part.list) {
+                if (!mLoaded.containsKey(sku.id.code)) {
+                    mLoaded.put(sku.id.code, sku);
+                }
+            }
+        }
+
+        @Nonnull
+        @Override
+        protected Skus getResult() {
+            final List<Sku> list = new ArrayList<>(mSkus.size());
+            for (String code : mSkus) {
+                final Sku sku = mLoaded.get(code);
+                if (sku != null) {
+                    list.add(sku);
+                }
+            }
+            return new Skus(mProduct, list);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Persists {@link Inventory.Products} in a file so that they can be shown before the billing
+ * service is connected. Purchases are stored together with their original data and signatures.
+ * Restored products are marked as stale, see {@link Inventory.Products#isStale()}.
+ * <p>
+ * <b>Note</b>: file operations are blocking, methods of this class should not be called on the
+ * main application thread.
+ * </p>
+ */
+@ThreadSafe
+final class InventorySnapshot {
+
+    private static final int VERSION = 1;
+
+    @Nonnull
+    private final File mFile;
+
+    InventorySnapshot(@Nonnull File file) {
+        mFile = file;
+    }
+
+    @Nonnull
+    static String toJson(@Nonnull Inventory.Products products) throws JSONException {
+        final JSONArray array = new JSONArray();
+        for (Inventory.Product product : products) {
+            final JSONObject json = new JSONObject();
+            json.put("id", product.id);
+            json.put("supported", product.supported);
+            if (product.mPurchasesLoaded) {
+                final JSONArray purchases = new JSONArray();
+                for (Purchase purchase : product.mPurchases) {
+                    final JSONArray p = new JSONArray();
+                    p.put(purchase.data);
+                    p.put(purchase.signature);
+                    purchases.put(p);
+                }
+                json.put("purchases", purchases);
+            }
+            if (product.mSkusLoaded) {
+                final JSONArray skus = new JSONArray();
+                for (Sku sku : product.mSkus) {
+                    skus.put(sku.toJsonObject());
+                }
+                json.put("skus", skus);
+            }
+            array.put(json);
+        }
+        final JSONObject json = new JSONObject();
+        json.put("version", VERSION);
+        json.put("products", array);
+        return json.toString();
+    }
+
+    @Nullable
+    static Inventory.Products fromJson(@Nonnull String s) throws JSONException {
+        final JSONObject json = new JSONObject(s);
+        if (json.optInt("version") != VERSION) {
+            return null;
+        }
+        final Inventory.Products products = new Inventory.Products();
+        final JSONArray array = json.getJSONArray("products");
+        for (int i = 0; i < array.length(); i++) {
+            final JSONObject p = array.getJSONObject(i);
+            final String id = p.getString("id");
+            if (!ProductTypes.ALL.contains(id)) {
+                continue;
+            }
+            final Inventory.Product product = new Inventory.Product(id, p.getBoolean("supported"));
+            final JSONArray purchases = p.optJSONArray("purchases");
+            if (purchases != null) {
+                final List<Purchase> list = new ArrayList<>(purchases.length());
+                for (int j = 0; j < purchases.length(); j++) {
+                    final JSONArray purchase = purchases.getJSONArray(j);
+                    list.add(Purchase.fromJson(purchase.getString(0), purchase.getString(1)));
+                }
+                product.setPurchases(list);
+            }
+            final JSONArray skus = p.optJSONArray("skus");
+            if (skus != null) {
+                final List<Sku> list = new ArrayList<>(skus.length());
+                for (int j = 0; j < skus.length(); j++) {
+                    list.add(Sku.fromJson(skus.getJSONObject(j).toString(), id));
+                }
+                product.setSkus(list);
+            }
+            products.add(product);
+        }
+        products.mStale = true;
+        return products;
+    }
+
+    /**
+     * Merges the loaded <var>products</var> into the <var>previous</var> snapshot: the purchases
+     * and SKUs which haven't been loaded this time (f.e. because of a transient error) are taken
+     * from the previous snapshot.
+     *
+     * @param products loaded products
+     * @param previous previously saved products, null if there is no snapshot
+     * @return products to be saved
+     */
+    @Nonnull
+    static Inventory.Products merge(@Nonnull Inventory.Products products, @Nullable Inventory.Products previous) {
+        if (previous == null) {
+            return products;
+        }
+        final Inventory.Products merged = new Inventory.Products();
+        for (Inventory.Product product : products) {
+            final Inventory.Product old = previous.get(product.id);
+            final Inventory.Product p = new Inventory.Product(product.id, product.supported || old.supported);
+            final Inventory.Product purchases = product.mPurchasesLoaded ? product : old;
+            if (purchases.mPurchasesLoaded) {
+                p.mPurchases.addAll(purchases.mPurchases);
+                p.mPurchasesLoaded = true;
+            }
+            final Inventory.Product skus = product.mSkusLoaded ? product : old;
+            if (skus.mSkusLoaded) {
+                p.mSkus.addAll(skus.mSkus);
+                p.mSkusLoaded = true;
+            }
+            merged.add(p);
+        }
+        return merged;
+    }
+
+    /**
+     * Same as {@link #write(Inventory.Products)} but keeps the purchases and SKUs which are
+     * missing in <var>products</var>, see {@link #merge(Inventory.Products, Inventory.Products)}
+     *
+     * @param products loaded products
+     */
+    void update(@Nonnull Inventory.Products products) {
+        write(merge(products, read()));
+    }
+
+    /**
+     * @return products saved in the last {@link #write(Inventory.Products)} call, null if there
+     * is no snapshot or it can't be read
+     */
+    @Nullable
+    Inventory.Products read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try {
+            return fromJson(Files.read(mFile));
+        } catch (IOException | JSONException e) {
+            Billing.error("Can't read inventory snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with <var>products</var>. The file is replaced atomically, i.e. a
+     * concurrent {@link #read()} either sees the previous or the new snapshot.
+     *
+     * @param products products to be saved
+     */
+    void write(@Nonnull Inventory.Products products) {
+        try {
+            Files.write(mFile, toJson(products));
+        } catch (IOException | JSONException e) {
+            Billing.error("Can't write inventory snapshot", e);
+        }
+    }
+}
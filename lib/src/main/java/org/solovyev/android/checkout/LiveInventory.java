@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * {@link Inventory} wrapper which keeps the loaded {@link Inventory.Products} up to date. The
+ * purchases are reloaded when the Play Store notifies about the changes (see
+ * {@link PlayStoreListener}) and when a purchase, a subscription change or a consumption made
+ * through the same {@link Billing} finishes. Several events which come one after another are
+ * handled with one reload. SKU details are loaded only once.
+ * <p>
+ * Observers are notified on the main application thread every time new products are loaded.
+ * An observer added after the products have been loaded is notified immediately.
+ * <p>
+ * Instances of this class can be obtained through {@link Checkout#makeLiveInventory(Inventory.Request)}.
+ * All methods must be called on the main application thread.
+ */
+public final class LiveInventory {
+
+    // events which come within this period are handled with one reload
+    static final long DELAY = Billing.SECOND / 2;
+
+    @Nonnull
+    private final Checkout mCheckout;
+    @Nonnull
+    private final Billing mBilling;
+    @Nonnull
+    private final Inventory mInventory;
+    @Nonnull
+    private final Inventory.Request mRequest;
+    @Nonnull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    @Nonnull
+    private final List<Inventory.Callback> mObservers = new ArrayList<>();
+    @Nonnull
+    private final PlayStoreListener mListener = new PlayStoreListener() {
+        @Override
+        public void onPurchasesChanged() {
+            // might be called on any thread
+            mHandler.removeCallbacks(mReload);
+            mHandler.postDelayed(mReload, DELAY);
+        }
+    };
+    @Nonnull
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+    @Nonnull
+    private final Inventory.Callback mCallback = new Inventory.Callback() {
+        @Override
+        public void onLoaded(@Nonnull final Inventory.Products products) {
+            // the products of an application Checkout are delivered on a background thread
+            if (MainThread.isMainThread()) {
+                onProductsLoaded(products);
+                return;
+            }
+            mHandler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    onProductsLoaded(products);
+                }
+            }, mCallback, SystemClock.uptimeMillis());
+        }
+    };
+    @Nullable
+    private Inventory.Products mProducts;
+    private boolean mStarted;
+    private boolean mLoading;
+    // true if the purchases have changed while the inventory was loading
+    private boolean mReloadPending;
+
+    LiveInventory(@Nonnull Checkout checkout, @Nonnull Inventory inventory, @Nonnull Inventory.Request request) {
+        mCheckout = checkout;
+        mBilling = checkout.mBilling;
+        mInventory = inventory;
+        mRequest = request.copy();
+    }
+
+    /**
+     * Loads the products and starts listening for the purchase changes.
+     */
+    public void start() {
+        Check.isMainThread();
+        Check.isFalse(mStarted, "Already started");
+        mStarted = true;
+        mCheckout.onLiveInventoryStarted(this);
+        mBilling.addPlayStoreListener(mListener);
+        mBilling.addPurchasesListener(mListener);
+        load(mRequest);
+    }
+
+    /**
+     * Stops listening for the purchase changes and cancels the loading (if any). Observers are
+     * kept and will be notified if this inventory is started again.
+     */
+    public void stop() {
+        Check.isMainThread();
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mCheckout.onLiveInventoryStopped(this);
+        mBilling.removePlayStoreListener(mListener);
+        mBilling.removePurchasesListener(mListener);
+        mHandler.removeCallbacks(mReload);
+        mHandler.removeCallbacksAndMessages(mCallback);
+        mInventory.cancel();
+        mLoading = false;
+        mReloadPending = false;
+    }
+
+    /**
+     * Reloads the purchases immediately, f.e. when the app knows that they have changed by other
+     * means.
+     */
+    public void reload() {
+        Check.isMainThread();
+        mHandler.removeCallbacks(mReload);
+        if (!mStarted) {
+            return;
+        }
+        if (mLoading) {
+            mReloadPending = true;
+            return;
+        }
+        if (mProducts == null) {
+            load(mRequest);
+            return;
+        }
+        final Inventory.Request request = mRequest.copy().reuse(mProducts);
+        for (String product : ProductTypes.ALL) {
+            request.purchasesChanged(product);
+        }
+        load(request);
+    }
+
+    private void load(@Nonnull Inventory.Request request) {
+        mLoading = true;
+        mInventory.load(request, mCallback);
+    }
+
+    private void onProductsLoaded(@Nonnull Inventory.Products products) {
+        Check.isMainThread();
+        if (!mStarted) {
+            return;
+        }
+        if (!products.isStale()) {
+            mLoading = false;
+            mProducts = products;
+        }
+        for (Inventory.Callback observer : new ArrayList<>(mObservers)) {
+            observer.onLoaded(products);
+        }
+        if (!mLoading && mReloadPending) {
+            mReloadPending = false;
+            reload();
+        }
+    }
+
+    /**
+     * Adds an observer which is notified every time the products are loaded. If the products
+     * have already been loaded the observer is notified immediately.
+     *
+     * @param observer observer to be added
+     */
+    public void addObserver(@Nonnull Inventory.Callback observer) {
+        Check.isMainThread();
+        Check.isTrue(!mObservers.contains(observer), "Observer " + observer + " is already added");
+        mObservers.add(observer);
+        if (mProducts != null) {
+            observer.onLoaded(mProducts);
+        }
+    }
+
+    public void removeObserver(@Nonnull Inventory.Callback observer) {
+        Check.isMainThread();
+        mObservers.remove(observer);
+    }
+
+    /**
+     * @return the last loaded products, null if nothing has been loaded yet
+     */
+    @Nullable
+    public Inventory.Products getProducts() {
+        Check.isMainThread();
+        return mProducts;
+    }
+
+    public boolean isStarted() {
+        Check.isMainThread();
+        return mStarted;
+    }
+}
@@ -60,6 +60,16 @@ final class MainThread implements CancellableExecutor {
         }
     }
 
+    /**
+     * Unlike {@link #execute(Runnable)} always posts <var>runnable</var> to be executed on the next
+     * iteration of the main thread looper, even if called on the main application thread
+     *
+     * @param runnable runnable to be executed on the main application thread
+     */
+    void post(@Nonnull Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
     @Override
     public void cancel(@Nonnull Runnable runnable) {
         mHandler.removeCallbacks(runnable);
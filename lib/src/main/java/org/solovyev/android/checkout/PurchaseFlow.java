@@ -30,6 +30,7 @@ import android.content.Intent;
 import android.content.IntentSender;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -69,14 +70,22 @@ public final class PurchaseFlow implements CancellableRequestListener<PendingInt
     private final int mRequestCode;
     @Nonnull
     private final PurchaseVerifier mVerifier;
+    // purchase verification might be slow (f.e. RSA) => it is done on this executor
+    @Nonnull
+    private final Executor mBackground;
+    @Nonnull
+    private final Executor mMainThread;
     @Nullable
     private RequestListener<Purchase> mListener;
 
-    PurchaseFlow(@Nonnull IntentStarter intentStarter, int requestCode, @Nonnull RequestListener<Purchase> listener, @Nonnull PurchaseVerifier verifier) {
+    PurchaseFlow(@Nonnull IntentStarter intentStarter, int requestCode, @Nonnull RequestListener<Purchase> listener, @Nonnull PurchaseVerifier verifier,
+            @Nonnull Executor background, @Nonnull Executor mainThread) {
         mIntentStarter = intentStarter;
         mRequestCode = requestCode;
         mListener = listener;
         mVerifier = verifier;
+        mBackground = background;
+        mMainThread = mainThread;
     }
 
     @Override
@@ -111,12 +120,26 @@ public final class PurchaseFlow implements CancellableRequestListener<PendingInt
             Check.isNotNull(signature);
 
             final Purchase purchase = Purchase.fromJson(data, signature);
-            mVerifier.verify(singletonList(purchase), new VerificationListener());
+            verify(purchase);
         } catch (RuntimeException | JSONException e) {
             handleError(e);
         }
     }
 
+    private void verify(@Nonnull final Purchase purchase) {
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                final VerificationListener listener = new VerificationListener();
+                try {
+                    mVerifier.verify(singletonList(purchase), listener);
+                } catch (RuntimeException e) {
+                    listener.onError(EXCEPTION, e);
+                }
+            }
+        });
+    }
+
     private void handleError(int response) {
         Billing.error("Error response: " + response + " in Purchase/ChangePurchase request");
         onError(response, new BillingException(response));
@@ -150,9 +173,32 @@ public final class PurchaseFlow implements CancellableRequestListener<PendingInt
         mListener = null;
     }
 
+    /**
+     * Listener passed to {@link PurchaseVerifier}. Its methods are called on the background
+     * thread, the result is then delivered on the main application thread.
+     */
     private class VerificationListener implements RequestListener<List<Purchase>> {
         @Override
-        public void onSuccess(@Nonnull List<Purchase> verifiedPurchases) {
+        public void onSuccess(@Nonnull final List<Purchase> verifiedPurchases) {
+            mMainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onVerified(verifiedPurchases);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final int response, @Nonnull final Exception e) {
+            mMainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onVerificationError(response, e);
+                }
+            });
+        }
+
+        private void onVerified(@Nonnull List<Purchase> verifiedPurchases) {
             Check.isMainThread();
             if (verifiedPurchases.isEmpty()) {
                 handleError(WRONG_SIGNATURE);
@@ -164,8 +210,7 @@ public final class PurchaseFlow implements CancellableRequestListener<PendingInt
             mListener.onSuccess(verifiedPurchases.get(0));
         }
 
-        @Override
-        public void onError(int response, @Nonnull Exception e) {
+        private void onVerificationError(int response, @Nonnull Exception e) {
             Check.isMainThread();
             if (response == EXCEPTION) {
                 handleError(e);
@@ -32,8 +32,9 @@ import com.android.vending.billing.InAppBillingServiceImpl;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -71,6 +72,10 @@ public final class Purchases {
     @Nullable
     public final String continuationToken;
 
+    // lazily built index of the list, see #getIndex()
+    @Nullable
+    private volatile PurchasesIndex mIndex;
+
     Purchases(@Nonnull String product, @Nonnull List<Purchase> list, @Nullable String continuationToken) {
         this.product = product;
         this.list = Collections.unmodifiableList(list);
@@ -109,88 +114,57 @@ public final class Purchases {
         return list != null ? list : Collections.<String>emptyList();
     }
 
-    @Nullable
-    static Purchase getPurchaseInState(@Nonnull List<Purchase> purchases, @Nonnull String sku, @Nonnull Purchase.State state) {
-        for (Purchase purchase : purchases) {
-            if (purchase.sku.equals(sku)) {
-                if (purchase.state == state) {
-                    return purchase;
-                }
-            }
-        }
-        return null;
-    }
-
+    /**
+     * Removes the purchases which cancel each other out. Purchases are processed in chronological
+     * order separately for each SKU: a purchase in {@link Purchase.State#PURCHASED} state followed
+     * by a purchase in any other state are both removed; any other purchase followed by a newer
+     * purchase of the same SKU is removed. Thus, at most one purchase per SKU remains.
+     *
+     * @param purchases purchases to be neutralized, the list is not modified
+     * @return remaining purchases, latest first
+     */
     @Nonnull
     static List<Purchase> neutralize(@Nonnull List<Purchase> purchases) {
-        // probably, it's possible to avoid creation of temporary list. The reason for it is that we don't want to
-        // modify original list
-        purchases = new LinkedList<>(purchases);
-
-        final List<Purchase> result = new ArrayList<>(purchases.size());
-
-        Collections.sort(purchases, PurchaseComparator.earliestFirst());
-        while (!purchases.isEmpty()) {
-            final Purchase purchase = purchases.get(0);
-            switch (purchase.state) {
-                case PURCHASED:
-                    if (!isNeutralized(purchases, purchase)) {
-                        result.add(purchase);
-                    }
-                    break;
-                case CANCELLED:
-                case REFUNDED:
-                case EXPIRED:
-                    if (!isDangling(purchases, purchase)) {
-                        result.add(purchase);
-                    }
-                    break;
+        final List<Purchase> sorted = new ArrayList<>(purchases);
+        Collections.sort(sorted, PurchaseComparator.earliestFirst());
+
+        // for each SKU: position of the purchase which might survive (it survives if there are no
+        // newer purchases of the same SKU)
+        final Map<String, Integer> candidates = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            final Purchase purchase = sorted.get(i);
+            final Integer candidate = candidates.get(purchase.sku);
+            if (candidate == null) {
+                candidates.put(purchase.sku, i);
+                continue;
             }
-            purchases.remove(0);
-        }
-
-        // purchases were added earliest first but we want result to be latest first
-        Collections.reverse(result);
-
-        return result;
-    }
-
-    private static boolean isDangling(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
-        Check.isFalse(purchase.state == Purchase.State.PURCHASED, "Must not be PURCHASED");
-        for (int i = 1; i < purchases.size(); i++) {
-            final Purchase same = purchases.get(i);
-            if (same.sku.equals(purchase.sku)) {
-                // for not purchases transaction exists newer transaction => this transaction is dangling
-                return true;
+            final Purchase previous = sorted.get(candidate);
+            if (previous.state == Purchase.State.PURCHASED && purchase.state != Purchase.State.PURCHASED) {
+                // neutralization found => both purchases are removed
+                candidates.remove(purchase.sku);
+                continue;
+            }
+            if (previous.state == Purchase.State.PURCHASED) {
+                // found same later purchase => obviously there is a bug somewhere as user can't own
+                // several purchases with same SKU. For now let's skip the earlier item
+                Billing.warning("Two purchases with same SKU found: " + previous + " and " + purchase);
             }
+            // the previous purchase is either dangling or duplicated => it's replaced
+            candidates.put(purchase.sku, i);
         }
 
-        return false;
-    }
-
-    private static boolean isNeutralized(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
-        Check.isTrue(purchase.state == Purchase.State.PURCHASED, "Must be PURCHASED");
-        for (int i = 1; i < purchases.size(); i++) {
-            final Purchase same = purchases.get(i);
-            if (same.sku.equals(purchase.sku)) {
-                switch (same.state) {
-                    case PURCHASED:
-                        // found same later purchase => obviously there is a bug somewhere as user can't own
-                        // several purchases with same SKU. For now let's skip the item
-                        Billing.warning("Two purchases with same SKU found: " + purchase + " and " + same);
-                        break;
-                    case CANCELLED:
-                    case REFUNDED:
-                    case EXPIRED:
-                        // neutralization found => need to remove it
-                        purchases.remove(i);
-                        break;
-                }
-                return true;
+        final boolean[] survived = new boolean[sorted.size()];
+        for (Integer candidate : candidates.values()) {
+            survived[candidate] = true;
+        }
+        // we want result to be latest first
+        final List<Purchase> result = new ArrayList<>(candidates.size());
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            if (survived[i]) {
+                result.add(sorted.get(i));
             }
         }
-
-        return false;
+        return result;
     }
 
     /**
@@ -230,14 +204,21 @@ public final class Purchases {
         return json;
     }
 
+    @Nonnull
+    private PurchasesIndex getIndex() {
+        // the list is immutable and the index is always the same: if several threads build it
+        // simultaneously nothing bad happens
+        PurchasesIndex index = mIndex;
+        if (index == null) {
+            index = PurchasesIndex.create(list);
+            mIndex = index;
+        }
+        return index;
+    }
+
     @Nullable
     public Purchase getPurchase(@Nonnull String sku) {
-        for (Purchase purchase : list) {
-            if (purchase.sku.equals(sku)) {
-                return purchase;
-            }
-        }
-        return null;
+        return getIndex().get(sku);
     }
 
     /**
@@ -261,6 +242,6 @@ public final class Purchases {
 
     @Nullable
     public Purchase getPurchaseInState(@Nonnull String sku, @Nonnull Purchase.State state) {
-        return getPurchaseInState(list, sku, state);
+        return getIndex().get(sku, state);
     }
 }
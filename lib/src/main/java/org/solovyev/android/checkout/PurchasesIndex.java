@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Index of a list of purchases by SKU and by SKU+state. For each key the first purchase in the
+ * list is stored, i.e. lookups return the same purchases as a linear search through the list.
+ */
+@Immutable
+final class PurchasesIndex {
+
+    // first slot is for a purchase in any state, others are for Purchase.State#ordinal() + 1
+    private static final int SLOTS = Purchase.State.values().length + 1;
+
+    @Nonnull
+    private final Map<String, Purchase[]> mMap;
+
+    private PurchasesIndex(@Nonnull Map<String, Purchase[]> map) {
+        mMap = map;
+    }
+
+    @Nonnull
+    static PurchasesIndex create(@Nonnull List<Purchase> purchases) {
+        final Map<String, Purchase[]> map = new HashMap<>(Math.max(16, purchases.size() * 4 / 3 + 1));
+        for (int i = 0; i < purchases.size(); i++) {
+            final Purchase purchase = purchases.get(i);
+            Purchase[] slots = map.get(purchase.sku);
+            if (slots == null) {
+                slots = new Purchase[SLOTS];
+                slots[0] = purchase;
+                map.put(purchase.sku, slots);
+            }
+            final int slot = purchase.state.ordinal() + 1;
+            if (slots[slot] == null) {
+                slots[slot] = purchase;
+            }
+        }
+        return new PurchasesIndex(map);
+    }
+
+    @Nullable
+    Purchase get(@Nonnull String sku) {
+        final Purchase[] slots = mMap.get(sku);
+        return slots == null ? null : slots[0];
+    }
+
+    @Nullable
+    Purchase get(@Nonnull String sku, @Nonnull Purchase.State state) {
+        final Purchase[] slots = mMap.get(sku);
+        return slots == null ? null : slots[state.ordinal() + 1];
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * {@link PurchaseVerifier} which sends purchases to a remote server for verification. Purchases
+ * of the verifications done at the same time are sent in one request: while
+ * <var>maxRequests</var> requests are running new verifications wait and are then sent together
+ * (up to <var>maxBatchSize</var> purchases in a request). HTTP connections are kept alive and
+ * reused by the consecutive requests. Verifications started on the main thread run on the threads
+ * of this verifier (which die when idle), not on {@link BackgroundThreads#getDefault()}, as they
+ * block on the network.
+ * <p>
+ * The server is expected to accept a POST request with a JSON body:
+ * <pre>
+ * {"purchases": [{"data": "...", "signature": "..."}, ...]}
+ * </pre>
+ * and respond with code 200 and a JSON body which contains a verification result for each of the
+ * purchases (in the same order):
+ * <pre>
+ * {"verified": [true, false, ...]}
+ * </pre>
+ * Override {@link #onConnectionCreated(HttpURLConnection)} to add headers (f.e. authorization) to
+ * the requests.
+ * </p>
+ * <p>
+ * By default the successfully verified purchases are remembered in memory (the same way as by
+ * {@link Billing#newCachingPurchaseVerifier(PurchaseVerifier)}) and are not sent again unless
+ * their data or signature change. To keep them between the application restarts create the
+ * verifier without the cache and wrap it with
+ * {@link Billing#newCachingPurchaseVerifier(PurchaseVerifier, java.io.File)}.
+ * </p>
+ * <p>
+ * <b>Note</b>: {@link HttpURLConnection} can't pipeline requests (send a request before the
+ * response to the previous one is received), instead up to <var>maxRequests</var> requests are
+ * sent over different kept-alive connections at the same time.
+ * </p>
+ */
+public class RemotePurchaseVerifier extends BasePurchaseVerifier {
+
+    public static final int DEFAULT_MAX_REQUESTS = 2;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    // verifications running at the same time (and, thus, waiting for the same requests)
+    private static final int THREAD_COUNT = 4;
+    private static final int TIMEOUT = (int) (10 * Billing.SECOND);
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Purchases of one {@link #verifyOnServer(List, RequestListener)} call
+     */
+    private static final class Call {
+        @Nonnull
+        final List<Purchase> mPurchases;
+        @GuardedBy("mLock")
+        boolean mDone;
+        @GuardedBy("mLock")
+        @Nullable
+        List<Purchase> mVerified;
+        @GuardedBy("mLock")
+        @Nullable
+        Exception mException;
+
+        Call(@Nonnull List<Purchase> purchases) {
+            mPurchases = purchases;
+        }
+    }
+
+    @Nonnull
+    private final URL mUrl;
+    private final int mMaxRequests;
+    private final int mMaxBatchSize;
+    // verifier used by #doVerify, either sends purchases to the server or remembers the verified
+    // purchases and sends only the unknown ones
+    @Nonnull
+    private final PurchaseVerifier mVerifier;
+    @Nonnull
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Queue<Call> mQueue = new ArrayDeque<>();
+    @GuardedBy("mLock")
+    private int mRequests;
+
+    public RemotePurchaseVerifier(@Nonnull URL url) {
+        this(url, DEFAULT_MAX_REQUESTS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param url          URL of the verification server
+     * @param maxRequests  maximum number of requests running at the same time
+     * @param maxBatchSize maximum number of purchases sent in one request. Note that purchases of
+     *                     one verification are always sent together
+     */
+    public RemotePurchaseVerifier(@Nonnull URL url, int maxRequests, int maxBatchSize) {
+        this(url, maxRequests, maxBatchSize, true);
+    }
+
+    /**
+     * Same as {@link #RemotePurchaseVerifier(URL, int, int)} but the verified purchases are
+     * remembered only if <var>cache</var> is true
+     */
+    public RemotePurchaseVerifier(@Nonnull URL url, int maxRequests, int maxBatchSize, boolean cache) {
+        // verifications block on the network for up to 2 * TIMEOUT => they run on their own
+        // threads and can't starve the other components using BackgroundThreads#getDefault()
+        this(url, maxRequests, maxBatchSize, cache, new Handler(Looper.getMainLooper()), new BackgroundThreads(getThreadCount(maxRequests)));
+    }
+
+    RemotePurchaseVerifier(@Nonnull URL url, int maxRequests, int maxBatchSize, boolean cache, @Nonnull Handler handler, @Nonnull BackgroundThreads threads) {
+        super(handler, threads, getThreadCount(maxRequests));
+        Check.isTrue(maxRequests > 0, "Should be positive");
+        Check.isTrue(maxBatchSize > 0, "Should be positive");
+        mUrl = url;
+        mMaxRequests = maxRequests;
+        mMaxBatchSize = maxBatchSize;
+        final PurchaseVerifier server = new PurchaseVerifier() {
+            @Override
+            public void verify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+                verifyOnServer(purchases, listener);
+            }
+        };
+        mVerifier = cache ? new CachingPurchaseVerifier(server, null) : server;
+    }
+
+    private static int getThreadCount(int maxRequests) {
+        return Math.max(THREAD_COUNT, maxRequests);
+    }
+
+    @Override
+    protected final void doVerify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+        // called on a background thread => the listener is called on the same thread
+        mVerifier.verify(purchases, listener);
+    }
+
+    private void verifyOnServer(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+        if (purchases.isEmpty()) {
+            listener.onSuccess(Collections.<Purchase>emptyList());
+            return;
+        }
+        final Call call = new Call(purchases);
+        synchronized (mLock) {
+            mQueue.add(call);
+        }
+        try {
+            await(call);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (mLock) {
+                mQueue.remove(call);
+            }
+            listener.onError(ResponseCodes.EXCEPTION, e);
+            return;
+        }
+        final List<Purchase> verified;
+        final Exception exception;
+        synchronized (mLock) {
+            verified = call.mVerified;
+            exception = call.mException;
+        }
+        if (verified != null) {
+            listener.onSuccess(verified);
+        } else {
+            Check.isNotNull(exception);
+            listener.onError(ResponseCodes.EXCEPTION, exception);
+        }
+    }
+
+    /**
+     * Waits until <var>call</var> is done. Meanwhile, the calling thread sends the queued
+     * purchases (including the purchases of other calls) if the limit of running requests allows.
+     */
+    private void await(@Nonnull Call call) throws InterruptedException {
+        while (true) {
+            final List<Call> batch;
+            synchronized (mLock) {
+                while (!call.mDone && (mRequests >= mMaxRequests || mQueue.isEmpty())) {
+                    mLock.wait();
+                }
+                if (call.mDone) {
+                    return;
+                }
+                batch = takeBatch();
+                mRequests++;
+            }
+            try {
+                send(batch);
+            } finally {
+                synchronized (mLock) {
+                    mRequests--;
+                    mLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    @Nonnull
+    private List<Call> takeBatch() {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        final List<Call> batch = new ArrayList<>();
+        int size = 0;
+        Call call;
+        while ((call = mQueue.peek()) != null) {
+            if (!batch.isEmpty() && size + call.mPurchases.size() > mMaxBatchSize) {
+                break;
+            }
+            batch.add(mQueue.poll());
+            size += call.mPurchases.size();
+        }
+        return batch;
+    }
+
+    private void send(@Nonnull List<Call> batch) {
+        try {
+            final JSONArray purchases = new JSONArray();
+            for (Call call : batch) {
+                for (Purchase purchase : call.mPurchases) {
+                    final JSONObject json = new JSONObject();
+                    json.put("data", purchase.data);
+                    json.put("signature", purchase.signature);
+                    purchases.put(json);
+                }
+            }
+            final JSONObject request = new JSONObject();
+            request.put("purchases", purchases);
+            final JSONArray verified = new JSONObject(post(request.toString())).getJSONArray("verified");
+            if (verified.length() != purchases.length()) {
+                throw new JSONException("Expected " + purchases.length() + " results, got " + verified.length());
+            }
+            int i = 0;
+            synchronized (mLock) {
+                for (Call call : batch) {
+                    final List<Purchase> result = new ArrayList<>(call.mPurchases.size());
+                    for (Purchase purchase : call.mPurchases) {
+                        if (verified.getBoolean(i++)) {
+                            result.add(purchase);
+                        }
+                    }
+                    call.mVerified = result;
+                    call.mDone = true;
+                }
+            }
+        } catch (IOException | JSONException | RuntimeException e) {
+            // all the calls of the batch must be done, otherwise their threads wait forever
+            Billing.error("Can't verify purchases on " + mUrl, e);
+            synchronized (mLock) {
+                for (Call call : batch) {
+                    call.mException = e;
+                    call.mDone = true;
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private String post(@Nonnull String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestProperty("Content-Type", "application/json; charset=" + CHARSET);
+        onConnectionCreated(connection);
+        final byte[] bytes = body.getBytes(CHARSET);
+        connection.setFixedLengthStreamingMode(bytes.length);
+        final OutputStream out = connection.getOutputStream();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        final int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            // the error body must be read for the connection to be reused
+            readFully(connection.getErrorStream());
+            throw new IOException("Unexpected response code: " + code);
+        }
+        // the connection is not disconnected: once the response is read it returns to the pool
+        // of the kept-alive connections
+        return readFully(connection.getInputStream());
+    }
+
+    @Nonnull
+    private static String readFully(@Nullable InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Called before a request is sent. Can be overridden to configure the connection, f.e. to add
+     * request headers.
+     *
+     * @param connection connection to the verification server
+     */
+    protected void onConnectionCreated(@Nonnull HttpURLConnection connection) {
+    }
+}
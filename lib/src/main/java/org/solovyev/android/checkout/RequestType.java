@@ -25,21 +25,26 @@ package org.solovyev.android.checkout;
 import javax.annotation.Nonnull;
 
 enum RequestType {
-    BILLING_SUPPORTED("supported", Billing.DAY),
-    GET_PURCHASES("purchases", 20L * Billing.MINUTE),
-    GET_PURCHASE_HISTORY("history", 0L),
-    GET_SKU_DETAILS("skus", Billing.DAY),
-    PURCHASE("purchase", 0L),
-    CHANGE_PURCHASE("change", 0L),
-    CONSUME_PURCHASE("consume", 0L);
+    BILLING_SUPPORTED("supported", Billing.DAY, true),
+    GET_PURCHASES("purchases", 20L * Billing.MINUTE, true),
+    GET_PURCHASE_HISTORY("history", 0L, true),
+    GET_SKU_DETAILS("skus", Billing.DAY, true),
+    PURCHASE("purchase", 0L, false),
+    CHANGE_PURCHASE("change", 0L, false),
+    CONSUME_PURCHASE("consume", 0L, false);
 
     final long expiresIn;
     @Nonnull
     final String cacheKeyName;
+    /**
+     * True if the request only reads the billing state and can be safely executed more than once
+     */
+    final boolean idempotent;
 
-    RequestType(@Nonnull String cacheKeyName, long expiresIn) {
+    RequestType(@Nonnull String cacheKeyName, long expiresIn, boolean idempotent) {
         this.cacheKeyName = cacheKeyName;
         this.expiresIn = expiresIn;
+        this.idempotent = idempotent;
     }
 
     @Nonnull
@@ -22,17 +22,25 @@
 
 package org.solovyev.android.checkout;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.AbstractWindowedCursor;
 import android.database.Cursor;
+import android.database.CursorWindow;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 import static android.database.sqlite.SQLiteDatabase.OPEN_READONLY;
 import static android.database.sqlite.SQLiteDatabase.openDatabase;
@@ -40,12 +48,33 @@ import static android.database.sqlite.SQLiteDatabase.openDatabase;
 public final class RobotmediaDatabase {
 
     static final String NAME = "billing.db";
+    // SQLite before 3.32 doesn't allow more than 999 parameters in one statement
+    static final int MAX_ARGS = 999;
+    private static final String TABLE = "purchases";
+    private static final String[] COLUMNS = {"_id", "state", "productId", "purchaseTime", "developerPayload"};
+    // purchase rows are small: there is no need in the default 2MB window
+    private static final int CURSOR_WINDOW_SIZE = 128 * 1024;
 
     @Nonnull
     private final Context mContext;
+    private final boolean mKeepOpen;
+    @GuardedBy("this")
+    @Nullable
+    private SQLiteDatabase mDb;
 
     public RobotmediaDatabase(@Nonnull Context context) {
+        this(context, false);
+    }
+
+    /**
+     * @param context  context
+     * @param keepOpen if true the read-only connection is opened on the first load and is reused
+     *                 by the subsequent loads until {@link #close()} is called. Otherwise, the
+     *                 database is opened and closed on each load
+     */
+    public RobotmediaDatabase(@Nonnull Context context, boolean keepOpen) {
         mContext = context;
+        mKeepOpen = keepOpen;
     }
 
     public static boolean exists(@Nonnull Context context) {
@@ -87,59 +116,152 @@ public final class RobotmediaDatabase {
     }
 
     @Nonnull
-    Inventory.Products load(@Nonnull Inventory.Request request) {
-        SQLiteDatabase db = null;
+    synchronized Inventory.Products load(@Nonnull Inventory.Request request) {
         try {
-            final String databasePath = RobotmediaDatabase.getDatabasePath(mContext);
-            db = openDatabase(databasePath, null, OPEN_READONLY);
-            return loadProducts(request, db);
+            return loadProducts(request, getDatabase());
         } catch (RuntimeException e) {
             Billing.error(e);
+            closeDatabase();
         } finally {
-            if (db != null) {
-                db.close();
+            if (!mKeepOpen) {
+                closeDatabase();
             }
         }
         return toInventoryProducts(ProductTypes.ALL);
     }
 
+    /**
+     * Closes the connection kept open between loads (see
+     * {@link #RobotmediaDatabase(Context, boolean)}). The connection will be opened again if
+     * another load is requested.
+     */
+    public synchronized void close() {
+        closeDatabase();
+    }
+
+    @Nonnull
+    private SQLiteDatabase getDatabase() {
+        Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+        if (mDb == null || !mDb.isOpen()) {
+            mDb = openDatabase(getDatabasePath(mContext), null, OPEN_READONLY);
+        }
+        return mDb;
+    }
+
+    private void closeDatabase() {
+        Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+        if (mDb != null) {
+            mDb.close();
+            mDb = null;
+        }
+    }
+
     @Nonnull
     private Inventory.Products loadProducts(@Nonnull Inventory.Request request, @Nonnull SQLiteDatabase db) {
+        // purchases of all products are loaded at once: SKU => products which requested it
+        final Map<String, List<String>> skus = new LinkedHashMap<>();
+        final Map<String, List<Purchase>> purchases = new HashMap<>();
+        for (String productId : ProductTypes.ALL) {
+            final List<String> productSkus = request.getSkus(productId);
+            if (productSkus.isEmpty()) {
+                Billing.warning("There are no SKUs for \"" + productId + "\" product. No purchase information will be loaded");
+                continue;
+            }
+            purchases.put(productId, new ArrayList<Purchase>());
+            for (String sku : productSkus) {
+                List<String> products = skus.get(sku);
+                if (products == null) {
+                    products = new ArrayList<>(1);
+                    skus.put(sku, products);
+                }
+                if (!products.contains(productId)) {
+                    products.add(productId);
+                }
+            }
+        }
+        if (!skus.isEmpty()) {
+            loadPurchases(skus, purchases, db);
+        }
+
         final Inventory.Products result = new Inventory.Products();
         for (String productId : ProductTypes.ALL) {
             final Inventory.Product product = new Inventory.Product(productId, true);
-
-            final List<String> skus = request.getSkus(productId);
-            if (!skus.isEmpty()) {
-                product.setPurchases(loadPurchases(skus, db));
-            } else {
-                Billing.warning("There are no SKUs for \"" + product.id + "\" product. No purchase information will be loaded");
+            final List<Purchase> productPurchases = purchases.get(productId);
+            if (productPurchases != null) {
+                product.setPurchases(productPurchases);
             }
-
             result.add(product);
         }
         return result;
     }
 
-    @Nonnull
-    private List<Purchase> loadPurchases(@Nonnull List<String> skus, @Nonnull SQLiteDatabase db) {
-        Check.isNotEmpty(skus);
-        final List<Purchase> purchases = new ArrayList<>(skus.size());
-        final String[] columns = {"_id", "state", "productId", "purchaseTime", "developerPayload"};
+    private void loadPurchases(@Nonnull Map<String, List<String>> skus,
+            @Nonnull Map<String, List<Purchase>> purchases, @Nonnull SQLiteDatabase db) {
+        final List<String> args = new ArrayList<>(skus.keySet());
         final String packageName = mContext.getPackageName();
 
+        // one query per MAX_ARGS SKUs, rows are distributed between the products as they are read
+        for (int start = 0; start < args.size(); start += MAX_ARGS) {
+            final List<String> chunk = args.subList(start, Math.min(args.size(), start + MAX_ARGS));
+            Cursor c = null;
+            try {
+                c = db.query(TABLE, COLUMNS, "productId in " + makeInClause(chunk.size()), chunk.toArray(new String[chunk.size()]), null, null, null);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                    setWindow(c);
+                }
+                if (c.moveToFirst()) {
+                    do {
+                        final Purchase p = newPurchase(c, packageName);
+                        final List<String> products = skus.get(p.sku);
+                        if (products == null) {
+                            continue;
+                        }
+                        for (String productId : products) {
+                            purchases.get(productId).add(p);
+                        }
+                    } while (c.moveToNext());
+                }
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads all the purchases stored in the database regardless of their SKUs.
+     *
+     * @return all purchases, null if the database can't be read
+     */
+    @Nullable
+    synchronized List<Purchase> loadAll() {
+        try {
+            return loadAll(getDatabase());
+        } catch (RuntimeException e) {
+            Billing.error(e);
+            closeDatabase();
+        } finally {
+            if (!mKeepOpen) {
+                closeDatabase();
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    private List<Purchase> loadAll(@Nonnull SQLiteDatabase db) {
+        final String packageName = mContext.getPackageName();
+        final List<Purchase> purchases = new ArrayList<>();
         Cursor c = null;
         try {
-            c = db.query("purchases", columns, "productId in " + makeInClause(skus.size()), skus.toArray(new String[skus.size()]), null, null, null);
+            c = db.query(TABLE, COLUMNS, null, null, null, null, null);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                setWindow(c);
+            }
             if (c.moveToFirst()) {
                 do {
-                    final String orderId = c.getString(0);
-                    final int state = c.getInt(1);
-                    final String sku = c.getString(2);
-                    final long time = c.getLong(3);
-                    final String payload = c.getString(4);
-                    final Purchase p = new Purchase(sku, orderId, packageName, time, state, payload, "", false, "", "");
-                    purchases.add(p);
+                    purchases.add(newPurchase(c, packageName));
                 } while (c.moveToNext());
             }
         } finally {
@@ -149,4 +271,21 @@ public final class RobotmediaDatabase {
         }
         return purchases;
     }
+
+    @Nonnull
+    private static Purchase newPurchase(@Nonnull Cursor c, @Nonnull String packageName) {
+        final String orderId = c.getString(0);
+        final int state = c.getInt(1);
+        final String sku = c.getString(2);
+        final long time = c.getLong(3);
+        final String payload = c.getString(4);
+        return new Purchase(sku, orderId, packageName, time, state, payload, "", false, "", "");
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    private static void setWindow(@Nonnull Cursor c) {
+        if (c instanceof AbstractWindowedCursor) {
+            ((AbstractWindowedCursor) c).setWindow(new CursorWindow(null, CURSOR_WINDOW_SIZE));
+        }
+    }
 }
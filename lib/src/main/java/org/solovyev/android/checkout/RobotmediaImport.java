@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Imports the purchases from the Robotmedia billing database (see {@link RobotmediaDatabase})
+ * into a file once. The file also records that the import has been done: when it exists the
+ * Robotmedia database is not opened anymore and the purchases are read from the file (and kept
+ * in memory after the first read).
+ * <p>
+ * <b>Note</b>: file and database operations are blocking, {@link #load(Inventory.Request)}
+ * should not be called on the main application thread.
+ * </p>
+ */
+@ThreadSafe
+final class RobotmediaImport {
+
+    private static final int VERSION = 1;
+
+    @Nonnull
+    private final Context mContext;
+    @Nonnull
+    private final File mFile;
+    @GuardedBy("this")
+    @Nullable
+    private List<Purchase> mPurchases;
+
+    RobotmediaImport(@Nonnull Context context, @Nonnull File file) {
+        mContext = context;
+        mFile = file;
+    }
+
+    @Nonnull
+    static String toJson(@Nonnull List<Purchase> purchases) throws JSONException {
+        final JSONArray array = new JSONArray();
+        for (Purchase purchase : purchases) {
+            array.put(purchase.toJsonObject(false));
+        }
+        final JSONObject json = new JSONObject();
+        json.put("version", VERSION);
+        json.put("purchases", array);
+        return json.toString();
+    }
+
+    @Nullable
+    static List<Purchase> fromJson(@Nonnull String s) throws JSONException {
+        final JSONObject json = new JSONObject(s);
+        if (json.optInt("version") != VERSION) {
+            return null;
+        }
+        final JSONArray array = json.getJSONArray("purchases");
+        final List<Purchase> purchases = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            final Purchase p = Purchase.fromJson(array.getJSONObject(i).toString(), "");
+            // same as the purchases loaded from the database: without the original data
+            purchases.add(new Purchase(p.sku, p.orderId, p.packageName, p.time, p.state.id, p.payload, "", false, "", ""));
+        }
+        return purchases;
+    }
+
+    /**
+     * Loads the purchases of the SKUs defined by <var>request</var>. If the purchases have not
+     * been imported yet they are read from the Robotmedia database and saved first.
+     *
+     * @param request request that defines which purchases should be loaded
+     * @return products with the imported purchases, null if the purchases can't be imported
+     */
+    @Nullable
+    synchronized Inventory.Products load(@Nonnull Inventory.Request request) {
+        if (mPurchases == null) {
+            mPurchases = read();
+        }
+        if (mPurchases == null) {
+            mPurchases = doImport();
+        }
+        if (mPurchases == null) {
+            return null;
+        }
+        return toProducts(request, mPurchases);
+    }
+
+    @Nonnull
+    private static Inventory.Products toProducts(@Nonnull Inventory.Request request, @Nonnull List<Purchase> purchases) {
+        final Inventory.Products result = new Inventory.Products();
+        for (String productId : ProductTypes.ALL) {
+            final Inventory.Product product = new Inventory.Product(productId, true);
+            final List<String> skus = request.getSkus(productId);
+            if (!skus.isEmpty()) {
+                product.setPurchases(filter(purchases, new HashSet<>(skus)));
+            }
+            result.add(product);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static List<Purchase> filter(@Nonnull List<Purchase> purchases, @Nonnull Set<String> skus) {
+        final List<Purchase> result = new ArrayList<>();
+        for (Purchase purchase : purchases) {
+            if (skus.contains(purchase.sku)) {
+                result.add(purchase);
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private List<Purchase> doImport() {
+        final List<Purchase> purchases;
+        if (RobotmediaDatabase.exists(mContext)) {
+            purchases = new RobotmediaDatabase(mContext).loadAll();
+            if (purchases == null) {
+                // try again next time
+                return null;
+            }
+        } else {
+            purchases = Collections.emptyList();
+        }
+        write(purchases);
+        return purchases;
+    }
+
+    @Nullable
+    private List<Purchase> read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try {
+            return fromJson(Files.read(mFile));
+        } catch (IOException | JSONException e) {
+            Billing.error("Can't read imported Robotmedia purchases", e);
+            return null;
+        }
+    }
+
+    private void write(@Nonnull List<Purchase> purchases) {
+        try {
+            Files.write(mFile, toJson(purchases));
+        } catch (IOException | JSONException e) {
+            Billing.error("Can't save imported Robotmedia purchases", e);
+        }
+    }
+}
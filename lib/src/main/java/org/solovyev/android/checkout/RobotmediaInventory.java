@@ -22,12 +22,11 @@
 
 package org.solovyev.android.checkout;
 
-import android.content.Context;
-
+import java.io.File;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public final class RobotmediaInventory extends BaseInventory {
 
@@ -42,7 +41,7 @@ public final class RobotmediaInventory extends BaseInventory {
 
         @Override
         public void run() {
-            if (RobotmediaDatabase.exists(mCheckout.getContext())) {
+            if (mImport != null || RobotmediaDatabase.exists(mCheckout.getContext())) {
                 mBackground.execute(new Loader());
             } else {
                 onLoaded(RobotmediaDatabase.toInventoryProducts(ProductTypes.ALL));
@@ -52,9 +51,11 @@ public final class RobotmediaInventory extends BaseInventory {
         private class Loader implements Runnable {
             @Override
             public void run() {
-                final Context context = mCheckout.getContext();
-                final RobotmediaDatabase database = new RobotmediaDatabase(context);
-                final Products products = database.load(mTask.getRequest());
+                final Request request = mTask.getRequest();
+                Products products = mImport != null ? mImport.load(request) : null;
+                if (products == null) {
+                    products = getDatabase().load(request);
+                }
                 onLoaded(products);
             }
         }
@@ -73,16 +74,71 @@ public final class RobotmediaInventory extends BaseInventory {
     private final Executor mBackground;
     @Nonnull
     private final Executor mOnLoadExecutor;
+    @Nullable
+    private final RobotmediaDatabase mDatabase;
+    @Nullable
+    private final RobotmediaImport mImport;
 
     public RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor onLoadExecutor) {
-        this(checkout, Executors.newSingleThreadExecutor(), onLoadExecutor);
+        this(checkout, BackgroundThreads.getDefault().newSerialExecutor(), onLoadExecutor);
     }
 
     public RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor background,
             @Nonnull Executor onLoadExecutor) {
+        this(checkout, background, onLoadExecutor, null, null);
+    }
+
+    /**
+     * Same as {@link #RobotmediaInventory(Checkout, Executor, Executor)} but all the loads go
+     * through the provided <var>database</var> which, if created with the connection kept open,
+     * saves reopening the database file on every load. The caller is responsible for closing the
+     * database.
+     */
+    public RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor background,
+            @Nonnull Executor onLoadExecutor, @Nullable RobotmediaDatabase database) {
+        this(checkout, background, onLoadExecutor, database, null);
+    }
+
+    /**
+     * Creates an inventory which imports the Robotmedia purchases into <var>imported</var> file
+     * on the first load (on a background thread). The following loads (including the loads done
+     * after the application restart) read the purchases from the file and don't open the
+     * Robotmedia database at all. The database itself is left untouched. Inventories created
+     * for the same file share the imported purchases (per {@link Billing}), so the file is read
+     * only once.
+     *
+     * @param checkout       checkout
+     * @param onLoadExecutor executor on which {@link Callback}s are called
+     * @param imported       file where the imported purchases are saved, f.e. a file in
+     *                       {@link android.content.Context#getFilesDir()}
+     */
+    public RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor onLoadExecutor,
+            @Nonnull File imported) {
+        this(checkout, BackgroundThreads.getDefault().newSerialExecutor(), onLoadExecutor, imported);
+    }
+
+    public RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor background,
+            @Nonnull Executor onLoadExecutor, @Nonnull File imported) {
+        this(checkout, background, onLoadExecutor, null,
+                checkout.mBilling.getRobotmediaImport(imported));
+    }
+
+    private RobotmediaInventory(@Nonnull Checkout checkout, @Nonnull Executor background,
+            @Nonnull Executor onLoadExecutor, @Nullable RobotmediaDatabase database,
+            @Nullable RobotmediaImport robotmediaImport) {
         super(checkout);
         mBackground = background;
         mOnLoadExecutor = onLoadExecutor;
+        mDatabase = database;
+        mImport = robotmediaImport;
+    }
+
+    @Nonnull
+    private RobotmediaDatabase getDatabase() {
+        if (mDatabase != null) {
+            return mDatabase;
+        }
+        return new RobotmediaDatabase(mCheckout.getContext());
     }
 
     @Nonnull
@@ -18,14 +18,12 @@ package org.solovyev.android.checkout;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 
 /**
  * Security-related methods. For a secure implementation, all of this code
@@ -39,9 +37,6 @@ import java.security.spec.X509EncodedKeySpec;
 final class Security {
     private static final String TAG = "Billing/Security";
 
-    private static final String KEY_FACTORY_ALGORITHM = "RSA";
-    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
-
     /**
      * Verifies that the data was signed with the given signature, and returns
      * the verified purchase. The data is in JSON format and signed
@@ -63,6 +58,19 @@ final class Security {
         return Security.verify(key, signedData, signature);
     }
 
+    /**
+     * Same as {@link #verifyPurchase(String, String, String)} but uses an already parsed public
+     * key, see {@link #generatePublicKey(String)}.
+     */
+    public static boolean verifyPurchase(PublicKey publicKey, String signedData, String signature) {
+        if (TextUtils.isEmpty(signedData) || TextUtils.isEmpty(signature)) {
+            Log.e(TAG, "Purchase verification failed: missing data.");
+            return false;
+        }
+
+        return Security.verify(publicKey, signedData, signature);
+    }
+
     /**
      * Generates a PublicKey instance from a string containing the
      * Base64-encoded public key.
@@ -72,11 +80,7 @@ final class Security {
      */
     public static PublicKey generatePublicKey(String encodedPublicKey) {
         try {
-            byte[] decodedKey = Base64.decode(encodedPublicKey);
-            KeyFactory keyFactory = KeyFactory.getInstance(KEY_FACTORY_ALGORITHM);
-            return keyFactory.generatePublic(new X509EncodedKeySpec(decodedKey));
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            return SignatureVerifier.parseKey(encodedPublicKey);
         } catch (InvalidKeySpecException e) {
             Log.e(TAG, "Invalid key specification.");
             throw new IllegalArgumentException(e);
@@ -96,12 +100,8 @@ final class Security {
      * @return true if the data and signature match
      */
     public static boolean verify(PublicKey publicKey, String signedData, String signature) {
-        Signature sig;
         try {
-            sig = Signature.getInstance(SIGNATURE_ALGORITHM);
-            sig.initVerify(publicKey);
-            sig.update(signedData.getBytes());
-            if (!sig.verify(Base64.decode(signature))) {
+            if (!SignatureVerifier.check(publicKey, signedData, signature)) {
                 Log.e(TAG, "Signature verification failed.");
                 return false;
             }
@@ -112,6 +112,8 @@ final class Security {
             Log.e(TAG, "Invalid key specification.");
         } catch (SignatureException e) {
             Log.e(TAG, "Signature exception.");
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Signature verification failed.");
         } catch (Base64DecoderException e) {
             Log.e(TAG, "Base64 decoding failed.");
         }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Process-wide registry of {@link Billing} objects. Different parts of an application (f.e.
+ * independent libraries) might need to talk to the billing service. If each of them creates
+ * its own {@link Billing} the billing service is bound several times, several
+ * {@link PlayStoreBroadcastReceiver}s are registered and several caches/request threads are
+ * kept in memory. Acquiring {@link Billing} through this class guarantees that only one instance
+ * exists per public key, i.e. there is only one binding, one receiver and one cache per process.
+ * <p>
+ * Instances are reference-counted: each call to {@link #acquire(Context, Billing.Configuration)}
+ * must be matched by a call to {@link #release(Billing)}. When the last reference is released the
+ * {@link Billing} is disconnected and removed from the registry.
+ * </p>
+ * <p>
+ * <b>Note</b>: as the instance is shared only the configuration passed by the first caller is
+ * used, configurations passed by the subsequent callers (with the same public key) are ignored.
+ * </p>
+ */
+@ThreadSafe
+public final class SharedBilling {
+
+    @GuardedBy("sEntries")
+    @Nonnull
+    private static final Map<String, Entry> sEntries = new HashMap<>();
+
+    private SharedBilling() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns {@link Billing} shared by everyone in the process who uses the same public key,
+     * creating it if needed. Can be called from any thread.
+     *
+     * @param context       context
+     * @param configuration billing configuration, used only if a new {@link Billing} is created
+     * @return shared {@link Billing}
+     */
+    @Nonnull
+    public static Billing acquire(@Nonnull Context context, @Nonnull Billing.Configuration configuration) {
+        final String publicKey = configuration.getPublicKey();
+        Check.isNotEmpty(publicKey);
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(publicKey);
+            if (entry == null) {
+                final Billing billing = new Billing(context, new Handler(Looper.getMainLooper()), configuration);
+                entry = new Entry(publicKey, billing);
+                sEntries.put(publicKey, entry);
+            }
+            entry.mReferences++;
+            return entry.mBilling;
+        }
+    }
+
+    /**
+     * Releases the reference obtained via {@link #acquire(Context, Billing.Configuration)}. The
+     * <var>billing</var> must not be used by the caller after this method has been called.
+     *
+     * @param billing billing to be released
+     */
+    public static void release(@Nonnull Billing billing) {
+        final Billing released;
+        synchronized (sEntries) {
+            final Entry entry = findEntry(billing);
+            if (entry == null) {
+                Billing.warning("Billing is not shared or was already released");
+                return;
+            }
+            entry.mReferences--;
+            if (entry.mReferences > 0) {
+                return;
+            }
+            sEntries.remove(entry.mPublicKey);
+            released = entry.mBilling;
+        }
+        // disconnect outside of the registry's lock as Billing has its own lock
+        released.disconnect();
+    }
+
+    @GuardedBy("sEntries")
+    @Nullable
+    private static Entry findEntry(@Nonnull Billing billing) {
+        for (Entry entry : sEntries.values()) {
+            if (entry.mBilling == billing) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    static int getReferences(@Nonnull String publicKey) {
+        synchronized (sEntries) {
+            final Entry entry = sEntries.get(publicKey);
+            return entry == null ? 0 : entry.mReferences;
+        }
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final String mPublicKey;
+        @Nonnull
+        private final Billing mBilling;
+        private int mReferences;
+
+        private Entry(@Nonnull String publicKey, @Nonnull Billing billing) {
+            mPublicKey = publicKey;
+            mBilling = billing;
+        }
+    }
+}
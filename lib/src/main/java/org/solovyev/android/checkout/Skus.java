@@ -30,7 +30,9 @@ import com.android.vending.billing.InAppBillingServiceImpl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -55,6 +57,10 @@ public final class Skus {
     @Nonnull
     public final List<Sku> list;
 
+    // lazily built index of the list by SKU code
+    @Nullable
+    private volatile Map<String, Sku> mIndex;
+
     Skus(@Nonnull String product, @Nonnull List<Sku> list) {
         this.product = product;
         this.list = Collections.unmodifiableList(list);
@@ -82,14 +88,30 @@ public final class Skus {
         return list != null ? list : Collections.<String>emptyList();
     }
 
+    /**
+     * @param skus list of SKUs
+     * @return map from SKU code to the first SKU with this code in <var>skus</var>
+     */
+    @Nonnull
+    static Map<String, Sku> index(@Nonnull List<Sku> skus) {
+        final Map<String, Sku> map = new HashMap<>(Math.max(16, skus.size() * 4 / 3 + 1));
+        for (int i = skus.size() - 1; i >= 0; i--) {
+            final Sku sku = skus.get(i);
+            map.put(sku.id.code, sku);
+        }
+        return map;
+    }
+
     @Nullable
     public Sku getSku(@Nonnull String sku) {
-        for (Sku s : list) {
-            if (s.id.code.equals(sku)) {
-                return s;
-            }
+        // the list is immutable and the index is always the same: if several threads build it
+        // simultaneously nothing bad happens
+        Map<String, Sku> index = mIndex;
+        if (index == null) {
+            index = index(list);
+            mIndex = index;
         }
-        return null;
+        return index.get(sku);
     }
 
     public boolean hasSku(@Nonnull String sku) {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Inventory which saves the products loaded by another {@link Inventory} into
+ * {@link InventorySnapshot} and delivers the saved products (marked as stale) while the actual
+ * data is loading. {@link Inventory.Callback} might be called twice for the same task: first
+ * with stale products restored from the snapshot and then with the loaded products. The
+ * stale products are not delivered if the loading finishes first.
+ */
+final class SnapshotInventory extends BaseInventory {
+
+    private class Worker implements Runnable, Callback {
+
+        @Nonnull
+        private final Task mTask;
+
+        Worker(@Nonnull Task task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            mBackground.execute(new Runnable() {
+                @Override
+                public void run() {
+                    restore();
+                }
+            });
+            mInventory.load(mTask.getRequest(), this);
+        }
+
+        private void restore() {
+            if (mTask.isCancelled()) {
+                return;
+            }
+            final Products products = mSnapshot.read();
+            if (products == null) {
+                return;
+            }
+            mOnLoadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mTask.onStaleLoaded(products);
+                }
+            });
+        }
+
+        @Override
+        public void onLoaded(@Nonnull final Products products) {
+            mTask.onDone(products);
+            if (!isAnySupported(products)) {
+                // don't overwrite the last known products with nothing (f.e. if the billing
+                // service is not available at the moment)
+                return;
+            }
+            mBackground.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // the parts which failed to load are kept from the previous snapshot
+                    mSnapshot.update(products);
+                }
+            });
+        }
+    }
+
+    @Nonnull
+    private final Inventory mInventory;
+    @Nonnull
+    private final InventorySnapshot mSnapshot;
+    @Nonnull
+    private final Executor mBackground;
+    @Nonnull
+    private final Executor mOnLoadExecutor;
+
+    SnapshotInventory(@Nonnull Checkout checkout, @Nonnull Inventory inventory,
+            @Nonnull InventorySnapshot snapshot, @Nonnull Executor onLoadExecutor) {
+        this(checkout, inventory, snapshot, BackgroundThreads.getDefault().newSerialExecutor(), onLoadExecutor);
+    }
+
+    SnapshotInventory(@Nonnull Checkout checkout, @Nonnull Inventory inventory,
+            @Nonnull InventorySnapshot snapshot, @Nonnull Executor background,
+            @Nonnull Executor onLoadExecutor) {
+        super(checkout);
+        mInventory = inventory;
+        mSnapshot = snapshot;
+        mBackground = background;
+        mOnLoadExecutor = onLoadExecutor;
+    }
+
+    private static boolean isAnySupported(@Nonnull Products products) {
+        for (Product product : products) {
+            if (product.supported) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    protected Runnable createWorker(@Nonnull Task task) {
+        return new Worker(task);
+    }
+}
@@ -29,6 +29,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import android.app.Activity;
+import android.os.Looper;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -38,12 +39,14 @@ import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
 import static org.solovyev.android.checkout.PurchaseFlowTest.newOkIntent;
 import static org.solovyev.android.checkout.ResponseCodes.NULL_INTENT;
 
@@ -143,6 +146,7 @@ public class ActivityCheckoutTest {
         final PurchaseVerifier verifier = mock(PurchaseVerifier.class);
         Tests.mockVerifier(verifier, true);
         mBilling.setPurchaseVerifier(verifier);
+        mBilling.setVerificationBackground(Tests.sameThreadExecutor());
 
         final RequestListener l = mock(RequestListener.class);
         mCheckout.createOneShotPurchaseFlow(l);
@@ -189,11 +193,45 @@ public class ActivityCheckoutTest {
 
             }
         };
+        mBilling.setVerificationBackground(Tests.sameThreadExecutor());
         mCheckout.createOneShotPurchaseFlow(l);
 
         mCheckout.onActivityResult(ActivityCheckout.DEFAULT_REQUEST_CODE, Activity.RESULT_OK, newOkIntent());
         verifierWaiter.countDown();
-        listenerWaiter.await(200, TimeUnit.MILLISECONDS);
+        // the result is delivered on the main thread
+        for (int i = 0; i < 100 && listenerWaiter.getCount() > 0; i++) {
+            shadowOf(Looper.getMainLooper()).idle();
+            listenerWaiter.await(10, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(0, listenerWaiter.getCount());
         verifyPurchaseFlowDoesntExist();
     }
+
+    @Test
+    public void testShouldNotVerifyPurchaseOnRequestsExecutor() throws Exception {
+        final PurchaseVerifier verifier = mock(PurchaseVerifier.class);
+        Tests.mockVerifier(verifier, true);
+        mBilling.setPurchaseVerifier(verifier);
+        // requests executor which never runs anything
+        mBilling.setBackground(new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+            }
+        });
+
+        final CountDownLatch listenerWaiter = new CountDownLatch(1);
+        mCheckout.createOneShotPurchaseFlow(new EmptyRequestListener<Purchase>() {
+            @Override
+            public void onSuccess(@Nonnull Purchase purchase) {
+                listenerWaiter.countDown();
+            }
+        });
+
+        mCheckout.onActivityResult(ActivityCheckout.DEFAULT_REQUEST_CODE, Activity.RESULT_OK, newOkIntent());
+        for (int i = 0; i < 100 && listenerWaiter.getCount() > 0; i++) {
+            shadowOf(Looper.getMainLooper()).idle();
+            listenerWaiter.await(10, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(0, listenerWaiter.getCount());
+    }
 }
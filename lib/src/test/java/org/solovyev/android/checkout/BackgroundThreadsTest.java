@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BackgroundThreadsTest {
+
+    @Nonnull
+    private BackgroundThreads mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        mThreads = new BackgroundThreads(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mThreads.shutdown();
+    }
+
+    @Test
+    public void testShouldRunSerialTasksInOrder() throws Exception {
+        final Executor executor = mThreads.newSerialExecutor();
+        final List<Integer> actual = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> expected = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            expected.add(value);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    actual.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testShouldLimitConcurrency() throws Exception {
+        final Executor executor = mThreads.newExecutor(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final int count = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), count));
+                    }
+                    sleep(5);
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testShouldShareThreads() throws Exception {
+        final Executor first = mThreads.newSerialExecutor();
+        final Executor second = mThreads.newSerialExecutor();
+        final Executor third = mThreads.newSerialExecutor();
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch thirdDone = new CountDownLatch(1);
+        final Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        };
+        first.execute(blocking);
+        second.execute(blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        third.execute(new Runnable() {
+            @Override
+            public void run() {
+                thirdDone.countDown();
+            }
+        });
+        // both threads are busy => the third executor has to wait
+        assertFalse(thirdDone.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(thirdDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShouldContinueAfterException() throws Exception {
+        final Executor executor = mThreads.newSerialExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException();
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShouldFinishSubmittedTasksAfterShutdown() throws Exception {
+        final Executor executor = mThreads.newSerialExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+                count.incrementAndGet();
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        });
+        mThreads.shutdown();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException e) {
+            // ok
+        }
+        release.countDown();
+        assertTrue(mThreads.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testShouldRecreateDefaultAfterShutdown() throws Exception {
+        final BackgroundThreads threads = BackgroundThreads.getDefault();
+        assertSame(threads, BackgroundThreads.getDefault());
+
+        threads.shutdown();
+
+        final BackgroundThreads newThreads = BackgroundThreads.getDefault();
+        assertNotSame(threads, newThreads);
+        assertFalse(newThreads.isShutdown());
+    }
+
+    @Test
+    public void testShouldVerifyOnSeparateThreads() throws Exception {
+        final BackgroundThreads threads = BackgroundThreads.getDefaultForVerification();
+        assertSame(threads, BackgroundThreads.getDefaultForVerification());
+        assertNotSame(BackgroundThreads.getDefault(), threads);
+
+        threads.shutdown();
+
+        final BackgroundThreads newThreads = BackgroundThreads.getDefaultForVerification();
+        assertNotSame(threads, newThreads);
+        assertFalse(newThreads.isShutdown());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void await(@Nonnull CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
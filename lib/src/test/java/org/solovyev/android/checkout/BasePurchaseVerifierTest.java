@@ -9,14 +9,20 @@ import android.os.Handler;
 import android.os.Looper;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -77,6 +83,118 @@ public class BasePurchaseVerifierTest {
         assertEquals("BackgroundThread", listener.mThreadName);
     }
 
+    @Test
+    public void testShouldVerifyPartsInParallelAndKeepOrder() throws Exception {
+        final BackgroundThreads threads = new BackgroundThreads(4);
+        final ParallelVerifier verifier = new ParallelVerifier(threads, -1);
+        final List<Purchase> purchases = newPurchases(100);
+        final ThreadAwareRequestListener listener = new ThreadAwareRequestListener();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                verifier.verify(purchases, listener);
+            }
+        }, "BackgroundThread").start();
+
+        assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+        threads.shutdown();
+        assertEquals("BackgroundThread", listener.mThreadName);
+        assertEquals(4, verifier.mParts.size());
+        assertEquals(expectedVerified(purchases), listener.mResult);
+    }
+
+    @Test
+    public void testShouldDeliverParallelResultOnMainThread() throws Exception {
+        final BackgroundThreads threads = new BackgroundThreads(4);
+        final ParallelVerifier verifier = new ParallelVerifier(threads, -1);
+        final List<Purchase> purchases = newPurchases(10);
+        final ThreadAwareRequestListener listener = new ThreadAwareRequestListener();
+
+        verifier.verify(purchases, listener);
+
+        final long end = System.currentTimeMillis() + 5000;
+        while (listener.mResult == null && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        threads.shutdown();
+        assertEquals(Thread.currentThread().getName(), listener.mThreadName);
+        assertEquals(expectedVerified(purchases), listener.mResult);
+    }
+
+    @Test
+    public void testShouldReportErrorOnceIfPartFails() throws Exception {
+        final BackgroundThreads threads = new BackgroundThreads(4);
+        final ParallelVerifier verifier = new ParallelVerifier(threads, 5);
+        final List<Purchase> purchases = newPurchases(20);
+        final ThreadAwareRequestListener listener = new ThreadAwareRequestListener();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                verifier.verify(purchases, listener);
+            }
+        }).start();
+
+        assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+        threads.shutdown();
+        assertNull(listener.mResult);
+        assertNotNull(listener.mException);
+        assertEquals(1, listener.mCalls);
+    }
+
+    @Nonnull
+    private static List<Purchase> newPurchases(int count) {
+        final List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            purchases.add(new Purchase(String.valueOf(i), "", "", i, 0, "", "", false, "", ""));
+        }
+        return purchases;
+    }
+
+    @Nonnull
+    private static List<Purchase> expectedVerified(@Nonnull List<Purchase> purchases) {
+        final List<Purchase> expected = new ArrayList<>();
+        for (Purchase purchase : purchases) {
+            if (purchase.time % 3 != 0) {
+                expected.add(purchase);
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Rejects every third purchase and fails on a purchase with time equal to
+     * <var>failOn</var>
+     */
+    private static final class ParallelVerifier extends BasePurchaseVerifier {
+        @Nonnull
+        final List<List<Purchase>> mParts = Collections.synchronizedList(new ArrayList<List<Purchase>>());
+        private final long mFailOn;
+
+        ParallelVerifier(@Nonnull BackgroundThreads threads, long failOn) {
+            super(new Handler(Looper.getMainLooper()), threads, 4, true);
+            mFailOn = failOn;
+        }
+
+        @Override
+        protected void doVerify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+            mParts.add(purchases);
+            final List<Purchase> verified = new ArrayList<>();
+            for (Purchase purchase : purchases) {
+                if (purchase.time == mFailOn) {
+                    listener.onError(ResponseCodes.ERROR, new Exception());
+                    return;
+                }
+                if (purchase.time % 3 != 0) {
+                    verified.add(purchase);
+                }
+            }
+            listener.onSuccess(verified);
+        }
+    }
+
     private static final class ThreadAwareVerifier extends BasePurchaseVerifier {
         @Nonnull
         private String mThreadName;
@@ -99,17 +217,26 @@ public class BasePurchaseVerifierTest {
 
     private static class ThreadAwareRequestListener extends CountDownLatchRequestListener {
         @Nonnull
-        private String mThreadName;
+        private volatile String mThreadName;
+        @Nullable
+        private volatile List<Purchase> mResult;
+        @Nullable
+        private volatile Exception mException;
+        private volatile int mCalls;
 
         @Override
         public void onSuccess(@Nonnull List<Purchase> result) {
             mThreadName = Thread.currentThread().getName();
+            mResult = result;
+            mCalls++;
             super.onSuccess(result);
         }
 
         @Override
         public void onError(int response, @Nonnull Exception e) {
             mThreadName = Thread.currentThread().getName();
+            mException = e;
+            mCalls++;
             super.onError(response, e);
         }
     }
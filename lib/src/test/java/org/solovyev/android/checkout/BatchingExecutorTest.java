@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class BatchingExecutorTest {
+
+    private QueueExecutor mQueue;
+    private BatchingExecutor mExecutor;
+    private List<Integer> mExecuted;
+
+    @Before
+    public void setUp() throws Exception {
+        mQueue = new QueueExecutor();
+        mExecutor = new BatchingExecutor(mQueue);
+        mExecuted = new ArrayList<>();
+    }
+
+    @Test
+    public void testShouldPostOneBatchForManyRunnables() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mExecutor.execute(new Add(i));
+        }
+
+        assertEquals(1, mQueue.mRunnables.size());
+        mQueue.runAll();
+        assertEquals(asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), mExecuted);
+    }
+
+    @Test
+    public void testShouldPostNewBatchAfterPreviousIsDone() throws Exception {
+        mExecutor.execute(new Add(0));
+        mQueue.runAll();
+        mExecutor.execute(new Add(1));
+
+        assertEquals(1, mQueue.mRunnables.size());
+        mQueue.runAll();
+        assertEquals(asList(0, 1), mExecuted);
+    }
+
+    @Test
+    public void testShouldRunRunnablesAddedDuringBatch() throws Exception {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mExecutor.execute(new Add(1));
+            }
+        });
+
+        mQueue.runAll();
+        assertEquals(asList(1), mExecuted);
+        assertEquals(0, mQueue.mRunnables.size());
+    }
+
+    @Test
+    public void testShouldNotRunCancelledRunnable() throws Exception {
+        final Add cancelled = new Add(1);
+        mExecutor.execute(new Add(0));
+        mExecutor.execute(cancelled);
+        mExecutor.execute(new Add(2));
+
+        mExecutor.cancel(cancelled);
+        mQueue.runAll();
+
+        assertEquals(asList(0, 2), mExecuted);
+    }
+
+    @Test
+    public void testShouldContinueAfterException() throws Exception {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        mExecutor.execute(new Add(1));
+
+        try {
+            mQueue.runAll();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        mQueue.runAll();
+        assertEquals(asList(1), mExecuted);
+    }
+
+    @Test
+    public void testShouldPostRemainingRunnablesAfterException() throws Exception {
+        // like MainThread: runs synchronously if called from a runnable it executes
+        final QueueExecutor main = new QueueExecutor();
+        main.mInlineWhileRunning = true;
+        final QueueExecutor posted = new QueueExecutor();
+        final BatchingExecutor executor = new BatchingExecutor(main, posted);
+        final IllegalStateException first = new IllegalStateException("first");
+        executor.execute(new Throw(first));
+        executor.execute(new Throw(new IllegalStateException("second")));
+        executor.execute(new Add(1));
+
+        try {
+            main.runAll();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(first, e);
+        }
+        // the remaining runnables are not run before the exception is propagated
+        assertEquals(0, mExecuted.size());
+        assertEquals(1, posted.mRunnables.size());
+
+        try {
+            posted.runAll();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("second", e.getMessage());
+        }
+        posted.runAll();
+        assertEquals(asList(1), mExecuted);
+    }
+
+    @Test
+    public void testShouldRunSynchronouslyOnSameThreadExecutor() throws Exception {
+        final BatchingExecutor executor = new BatchingExecutor(Tests.sameThreadExecutor());
+        executor.execute(new Add(0));
+        executor.execute(new Add(1));
+
+        assertEquals(asList(0, 1), mExecuted);
+    }
+
+    private final class Add implements Runnable {
+        private final int mValue;
+
+        private Add(int value) {
+            mValue = value;
+        }
+
+        @Override
+        public void run() {
+            mExecuted.add(mValue);
+        }
+    }
+
+    private static final class Throw implements Runnable {
+        @Nonnull
+        private final RuntimeException mException;
+
+        private Throw(@Nonnull RuntimeException exception) {
+            mException = exception;
+        }
+
+        @Override
+        public void run() {
+            throw mException;
+        }
+    }
+
+    private static final class QueueExecutor implements CancellableExecutor {
+        @Nonnull
+        private final List<Runnable> mRunnables = new ArrayList<>();
+        private boolean mInlineWhileRunning;
+        private boolean mRunning;
+
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            if (mInlineWhileRunning && mRunning) {
+                runnable.run();
+                return;
+            }
+            mRunnables.add(runnable);
+        }
+
+        @Override
+        public void cancel(@Nonnull Runnable runnable) {
+            mRunnables.remove(runnable);
+        }
+
+        void runAll() {
+            mRunning = true;
+            try {
+                while (!mRunnables.isEmpty()) {
+                    mRunnables.remove(0).run();
+                }
+            } finally {
+                mRunning = false;
+            }
+        }
+    }
+}
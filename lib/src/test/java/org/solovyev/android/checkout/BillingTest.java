@@ -16,12 +16,14 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import android.os.Bundle;
+import android.os.DeadObjectException;
 import android.os.RemoteException;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -31,6 +33,8 @@ import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
@@ -91,6 +95,26 @@ public class BillingTest {
         verify(l, times(0)).onSuccess(any());
     }
 
+    @Test
+    public void testShouldFailFastIfServiceKeepsFailing() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        when(connector.connect()).thenReturn(false);
+        mBilling.setConnector(connector);
+
+        final RequestListener<Object> l = mock(RequestListener.class);
+        mBilling.getRequests().isBillingSupported("p", l);
+        mBilling.getRequests().isBillingSupported("p", l);
+        // the third request should not even try to bind the service
+        mBilling.getRequests().isBillingSupported("p", l);
+
+        verify(connector, times(2)).connect();
+        verify(l, times(3)).onError(eq(ResponseCodes.SERVICE_NOT_CONNECTED), any(BillingException.class));
+        final ConnectionStats stats = mBilling.getConnectionStats();
+        assertEquals(2, stats.attempts);
+        assertEquals(2, stats.failures);
+        assertEquals(2, stats.consecutiveFailures);
+    }
+
     @Test
     public void testShouldNotifyErrorIfConnectorReturnedNull() throws Exception {
         final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
@@ -202,6 +226,128 @@ public class BillingTest {
         verify(connector, times(1)).disconnect();
     }
 
+    @Test
+    public void testShouldReconnectIfServiceDies() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        final InAppBillingService service = mock(InAppBillingService.class);
+        when(connector.connect()).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                mBilling.setService(service, true);
+                return true;
+            }
+        });
+        mBilling.setConnector(connector);
+        mBilling.connect();
+        assertEquals(Billing.State.CONNECTED, mBilling.getState());
+
+        mBilling.onServiceDied(service);
+
+        assertEquals(Billing.State.CONNECTED, mBilling.getState());
+        verify(connector, times(2)).connect();
+    }
+
+    @Test
+    public void testShouldNotReconnectIfDisconnectedServiceDies() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        final InAppBillingService service = mock(InAppBillingService.class);
+        when(connector.connect()).thenReturn(true);
+        mBilling.setConnector(connector);
+        mBilling.connect();
+        mBilling.setService(service, true);
+        mBilling.disconnect();
+
+        mBilling.onServiceDied(service);
+
+        assertEquals(Billing.State.DISCONNECTED, mBilling.getState());
+        verify(connector, times(1)).connect();
+    }
+
+    @Test
+    public void testShouldRetryRequestIfServiceDiesDuringExecution() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        final InAppBillingService service = mock(InAppBillingService.class);
+        when(service.isBillingSupported(anyInt(), any(), any())).thenThrow(new DeadObjectException()).thenReturn(OK);
+        when(connector.connect()).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                mBilling.setService(service, true);
+                return true;
+            }
+        });
+
+        mBilling.setConnector(connector);
+        final RequestListener<Object> l = mock(RequestListener.class);
+        mBilling.getRequests().isBillingSupported("p", l);
+
+        verify(l, never()).onError(anyInt(), any(Exception.class));
+        verify(l, times(1)).onSuccess(any());
+        verify(connector, times(2)).connect();
+    }
+
+    @Test
+    public void testShouldNotRetryConsumeIfServiceDiesDuringExecution() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        final InAppBillingService service = mock(InAppBillingService.class);
+        when(service.consumePurchase(anyInt(), any(), any())).thenThrow(new DeadObjectException()).thenReturn(OK);
+        when(connector.connect()).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                mBilling.setService(service, true);
+                return true;
+            }
+        });
+
+        mBilling.setConnector(connector);
+        final RequestListener<Object> l = mock(RequestListener.class);
+        mBilling.getRequests().consume("token", l);
+
+        verify(l, times(1)).onError(eq(ResponseCodes.EXCEPTION), any(DeadObjectException.class));
+        verify(l, never()).onSuccess(any());
+        verify(service, times(1)).consumePurchase(anyInt(), any(), eq("token"));
+    }
+
+    @Test
+    public void testShouldDeliverResultsOnExecutor() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                tasks.add(command);
+            }
+        };
+        final BillingRequests requests = mBilling.newRequestsBuilder().withTag("tag").onExecutor(executor).create();
+        final RequestListener<Object> l = mock(RequestListener.class);
+        requests.isBillingSupported("p", l);
+
+        assertEquals(1, tasks.size());
+        verify(l, never()).onSuccess(any());
+        tasks.get(0).run();
+        verify(l).onSuccess(any());
+    }
+
+    @Test
+    public void testShouldNotCallCancelledListenerOnExecutor() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                tasks.add(command);
+            }
+        };
+        final RequestListener<Object> l = mock(RequestListener.class);
+        final ExecutorRequestListener<Object> el = new ExecutorRequestListener<>(executor, l);
+        el.onSuccess(new Object());
+        el.onError(3, new Exception());
+        el.cancel();
+
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        verify(l, never()).onSuccess(any());
+        verify(l, never()).onError(anyInt(), any(Exception.class));
+    }
+
     @Test
     public void testShouldGoToDisconnectedStateFromConnectingIfBillingDies() throws Exception {
         mBilling.setState(Billing.State.CONNECTING);
@@ -278,6 +424,38 @@ public class BillingTest {
         verify(l.listener).onSuccess(argThat(new HamcrestArgumentMatcher<>(new PurchasesMatcher())));
     }
 
+    @Test
+    public void testShouldPeekPurchasesFromCache() throws Exception {
+        final Billing billing = prepareMultiPurchasesBilling();
+        assertNull(billing.peekPurchases(ProductTypes.IN_APP, null));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownListener l = new CountDownListener(latch);
+        billing.getRequests().getPurchases(ProductTypes.IN_APP, null, l);
+        assertTrue(latch.await(1, SECONDS));
+
+        final Purchases purchases = billing.peekPurchases(ProductTypes.IN_APP, null);
+        assertNotNull(purchases);
+        assertEquals(1, purchases.list.size());
+        assertEquals("1", purchases.continuationToken);
+        assertNull(billing.peekPurchases(ProductTypes.IN_APP, "1"));
+        assertNull(billing.peekPurchases(ProductTypes.SUBSCRIPTION, null));
+    }
+
+    @Test
+    public void testShouldNotConnectWhenPeeking() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        mBilling.disconnect();
+        mBilling.setConnector(connector);
+        final Billing.State state = mBilling.getState();
+
+        assertNull(mBilling.peekSkus(ProductTypes.IN_APP, asList("sku")));
+        assertNull(mBilling.peekPurchases(ProductTypes.IN_APP, null));
+
+        verify(connector, never()).connect();
+        assertEquals(state, mBilling.getState());
+    }
+
     @Test
     public void testShouldLoadWholePurchaseHistory() throws Exception {
         final Billing billing = prepareMultiPurchasesBilling();
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.checkout.Tests.sameThreadExecutor;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CachingPurchaseVerifierTest {
+
+    @Nonnull
+    private CountingVerifier mOriginal;
+    @Nonnull
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mOriginal = new CountingVerifier();
+        mFile = new File(RuntimeEnvironment.application.getFilesDir(), "verified");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void testShouldNotVerifyVerifiedPurchasesAgain() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null);
+        final List<Purchase> purchases = asList(newPurchase(1, "s1"), newPurchase(2, "s2"));
+
+        assertEquals(purchases, verify(verifier, purchases));
+        assertEquals(purchases, verify(verifier, purchases));
+
+        assertEquals(2, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldVerifyOnlyUnknownPurchasesAndKeepOrder() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null);
+        final Purchase p1 = newPurchase(1, "s1");
+        final Purchase p2 = newPurchase(2, "s2");
+        final Purchase p3 = newPurchase(3, "s3");
+        verify(verifier, asList(p2));
+
+        assertEquals(asList(p1, p2, p3), verify(verifier, asList(p1, p2, p3)));
+        assertEquals(3, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldVerifyAgainIfSignatureChanges() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null);
+        verify(verifier, asList(newPurchase(1, "s1")));
+        verify(verifier, asList(newPurchase(1, "s2")));
+
+        assertEquals(2, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldNotRememberRejectedPurchases() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null);
+        final List<Purchase> purchases = asList(newPurchase(1, "s1"), newPurchase(2, CountingVerifier.WRONG));
+
+        assertEquals(purchases.subList(0, 1), verify(verifier, purchases));
+        assertEquals(purchases.subList(0, 1), verify(verifier, purchases));
+
+        assertEquals(3, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldForgetLeastRecentlyUsedPurchases() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null, 2, sameThreadExecutor());
+        final Purchase p1 = newPurchase(1, "s1");
+        final Purchase p2 = newPurchase(2, "s2");
+        final Purchase p3 = newPurchase(3, "s3");
+        verify(verifier, asList(p1, p2));
+        verify(verifier, asList(p1));
+        verify(verifier, asList(p3));
+        assertEquals(3, mOriginal.mVerified);
+
+        // p2 was evicted, p1 was used more recently
+        verify(verifier, asList(p1));
+        assertEquals(3, mOriginal.mVerified);
+        verify(verifier, asList(p2));
+        assertEquals(4, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldKeepKnownPurchasesForgottenDuringVerification() throws Exception {
+        final CachingPurchaseVerifier verifier = new CachingPurchaseVerifier(mOriginal, null, 2, sameThreadExecutor());
+        final Purchase p1 = newPurchase(1, "s1");
+        final Purchase p2 = newPurchase(2, "s2");
+        final Purchase p3 = newPurchase(3, "s3");
+        final Purchase p4 = newPurchase(4, "s4");
+        verify(verifier, asList(p1, p2));
+
+        // p3 and p4 push p1 and p2 out of the cache
+        assertEquals(asList(p1, p2, p3, p4), verify(verifier, asList(p1, p2, p3, p4)));
+        assertEquals(4, mOriginal.mVerified);
+    }
+
+    @Test
+    public void testShouldRestoreVerifiedPurchasesFromFile() throws Exception {
+        final List<Purchase> purchases = asList(newPurchase(1, "s1"), newPurchase(2, "s2"));
+        verify(new CachingPurchaseVerifier(mOriginal, mFile, 10, sameThreadExecutor()), purchases);
+        assertTrue(mFile.exists());
+
+        final CountingVerifier original = new CountingVerifier();
+        final List<Purchase> verified = verifyOnBackgroundThread(new CachingPurchaseVerifier(original, mFile, 10, sameThreadExecutor()), purchases);
+
+        assertEquals(purchases, verified);
+        assertEquals(0, original.mVerified);
+    }
+
+    @Test
+    public void testShouldNotOverwriteFileBeforeReadingIt() throws Exception {
+        final Purchase p1 = newPurchase(1, "s1");
+        final Purchase p2 = newPurchase(2, "s2");
+        verify(new CachingPurchaseVerifier(mOriginal, mFile, 10, sameThreadExecutor()), asList(p1));
+
+        // main thread: the file is not read here but must be read before it's written
+        verify(new CachingPurchaseVerifier(mOriginal, mFile, 10, sameThreadExecutor()), asList(p2));
+
+        final CountingVerifier original = new CountingVerifier();
+        verifyOnBackgroundThread(new CachingPurchaseVerifier(original, mFile, 10, sameThreadExecutor()), asList(p1, p2));
+        assertEquals(0, original.mVerified);
+    }
+
+    @Test
+    public void testDigestsShouldDiffer() throws Exception {
+        assertEquals(CachingPurchaseVerifier.digest(newPurchase(1, "s")), CachingPurchaseVerifier.digest(newPurchase(1, "s")));
+        assertNotEquals(CachingPurchaseVerifier.digest(newPurchase(1, "s")), CachingPurchaseVerifier.digest(newPurchase(2, "s")));
+        assertNotEquals(CachingPurchaseVerifier.digest(new Purchase("1", "", "", 0, 0, "", "", false, "ab", "c")),
+                CachingPurchaseVerifier.digest(new Purchase("1", "", "", 0, 0, "", "", false, "a", "bc")));
+    }
+
+    @Nonnull
+    private static Purchase newPurchase(long id, @Nonnull String signature) throws Exception {
+        return Purchase.fromJson(PurchaseTest.newJson(id, Purchase.State.PURCHASED), signature);
+    }
+
+    @Nonnull
+    private static List<Purchase> verify(@Nonnull PurchaseVerifier verifier, @Nonnull List<Purchase> purchases) {
+        final ResultListener listener = new ResultListener();
+        verifier.verify(purchases, listener);
+        assertNotNull(listener.mResult);
+        return listener.mResult;
+    }
+
+    @Nonnull
+    private static List<Purchase> verifyOnBackgroundThread(@Nonnull final PurchaseVerifier verifier, @Nonnull final List<Purchase> purchases) throws Exception {
+        final List<List<Purchase>> result = new ArrayList<>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.add(verify(verifier, purchases));
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(1, result.size());
+        return result.get(0);
+    }
+
+    private static final class CountingVerifier implements PurchaseVerifier {
+        static final String WRONG = "wrong";
+        private int mVerified;
+
+        @Override
+        public synchronized void verify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+            final List<Purchase> verified = new ArrayList<>();
+            for (Purchase purchase : purchases) {
+                mVerified++;
+                if (!WRONG.equals(purchase.signature)) {
+                    verified.add(purchase);
+                }
+            }
+            listener.onSuccess(verified);
+        }
+    }
+
+    private static final class ResultListener implements RequestListener<List<Purchase>> {
+        @Nullable
+        private List<Purchase> mResult;
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            mResult = result;
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -25,14 +25,23 @@ package org.solovyev.android.checkout;
 import org.junit.Assert;
 import org.junit.Test;
 
+import android.os.Bundle;
 import android.os.RemoteException;
 
+import com.android.vending.billing.InAppBillingService;
+
 import java.util.List;
 
 import javax.annotation.Nonnull;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.solovyev.android.checkout.ProductTypes.IN_APP;
 import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
 
@@ -120,6 +129,37 @@ public class CheckoutInventoryTest extends InventoryTestBase {
         assertEquals(2, c2.mProducts.get(IN_APP).getSkus().size());
     }
 
+    @Test
+    public void testShouldReloadOnlyChangedData() throws Exception {
+        mBilling = Tests.newBilling(false);
+        populatePurchases();
+        populateSkus();
+        final Checkout checkout = Checkout.forApplication(mBilling);
+        final CheckoutInventory inventory = new CheckoutInventory(checkout);
+        checkout.start();
+
+        final TestCallback c1 = new TestCallback();
+        inventory.load(mRequest, c1);
+        Tests.waitWhileLoading(inventory);
+
+        final TestCallback c2 = new TestCallback();
+        inventory.load(mRequest.copy().reuse(c1.mProducts).purchasesChanged(IN_APP), c2);
+        Tests.waitWhileLoading(inventory);
+
+        final InAppBillingService service = ((TestServiceConnector) mBilling.getConnector()).mService;
+        verify(service, times(2)).getPurchases(anyInt(), any(), eq(IN_APP), isNull(String.class));
+        verify(service, times(1)).getPurchases(anyInt(), any(), eq(SUBSCRIPTION), isNull(String.class));
+        verify(service, times(1)).getSkuDetails(anyInt(), any(), eq(IN_APP), any(Bundle.class));
+        verify(service, times(1)).getSkuDetails(anyInt(), any(), eq(SUBSCRIPTION), any(Bundle.class));
+
+        for (String product : ProductTypes.ALL) {
+            final Inventory.Product expected = c1.mProducts.get(product);
+            final Inventory.Product actual = c2.mProducts.get(product);
+            assertEquals(expected.getPurchases().size(), actual.getPurchases().size());
+            assertEquals(expected.getSkus(), actual.getSkus());
+        }
+    }
+
     private static final class CrashingCallback implements Inventory.Callback {
 
         private volatile boolean exceptionThrown;
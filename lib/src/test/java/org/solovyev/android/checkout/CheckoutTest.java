@@ -88,6 +88,39 @@ public class CheckoutTest {
         verify(l.mListener).onReady(any(BillingRequests.class));
     }
 
+    @Test
+    public void testShouldBeReadySynchronouslyIfProductsAreKnownToBeSupported() throws Exception {
+        final AwaitingListener l = new AwaitingListener();
+        mCheckout.start(l);
+        l.waitWhileLoading();
+
+        final Checkout.Listener l2 = mock(Checkout.Listener.class);
+        mCheckout.whenReady(l2);
+
+        verify(l2, times(2)).onReady(any(BillingRequests.class), any(), eq(true));
+        verify(l2).onReady(any(BillingRequests.class));
+        verify(mService, times(1)).isBillingSupported(eq(3), any(), eq(IN_APP));
+        verify(mService, times(1)).isBillingSupported(eq(3), any(), eq(SUBSCRIPTION));
+    }
+
+    @Test
+    public void testShouldRequestAllProductsIfSomeAreNotKnownToBeSupported() throws Exception {
+        when(mService.isBillingSupported(eq(3), any(), eq(SUBSCRIPTION))).thenReturn(BILLING_UNAVAILABLE);
+        final AwaitingListener l = new AwaitingListener();
+        mCheckout.start(l);
+        l.waitWhileLoading();
+
+        final AwaitingListener l2 = new AwaitingListener();
+        mCheckout.whenReady(l2);
+        l2.waitWhileLoading();
+
+        verify(l2.mListener).onReady(any(BillingRequests.class), eq(IN_APP), eq(true));
+        verify(l2.mListener).onReady(any(BillingRequests.class), eq(SUBSCRIPTION), eq(false));
+        verify(l2.mListener).onReady(any(BillingRequests.class));
+        verify(mService, times(2)).isBillingSupported(eq(3), any(), eq(IN_APP));
+        verify(mService, times(2)).isBillingSupported(eq(3), any(), eq(SUBSCRIPTION));
+    }
+
     @Test
     public void testShouldLoadPurchasesWhenProductsBecameSupported() throws Exception {
         when(mService.isBillingSupported(eq(3), any(), eq(IN_APP))).thenReturn(BILLING_UNAVAILABLE);
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionSupervisorTest {
+
+    private ConnectionSupervisor mSupervisor;
+
+    @Before
+    public void setUp() throws Exception {
+        mSupervisor = new ConnectionSupervisor(new Random(42));
+    }
+
+    @Test
+    public void testShouldAllowImmediateRetryAfterFirstFailure() throws Exception {
+        mSupervisor.onConnecting(0);
+        mSupervisor.onFailed(10);
+
+        assertEquals(0, mSupervisor.getCoolDown(10));
+    }
+
+    @Test
+    public void testShouldBackOffAfterConsecutiveFailures() throws Exception {
+        long previousMax = 0;
+        for (int i = 0; i < 20; i++) {
+            mSupervisor.onConnecting(0);
+            mSupervisor.onFailed(0);
+            final long coolDown = mSupervisor.getCoolDown(0);
+            if (i == 0) {
+                assertEquals(0, coolDown);
+                continue;
+            }
+            final long max = Math.min(ConnectionSupervisor.MAX_DELAY, ConnectionSupervisor.INITIAL_DELAY << Math.min(i - 1, 30));
+            assertTrue(coolDown >= max / 2);
+            assertTrue(coolDown <= max);
+            assertTrue(max >= previousMax);
+            previousMax = max;
+        }
+        assertEquals(ConnectionSupervisor.MAX_DELAY, previousMax);
+        assertEquals(20, mSupervisor.getStats().consecutiveFailures);
+    }
+
+    @Test
+    public void testShouldAllowConnectionAfterCoolDown() throws Exception {
+        mSupervisor.onFailed(0);
+        mSupervisor.onFailed(0);
+        final long coolDown = mSupervisor.getCoolDown(0);
+
+        assertTrue(coolDown > 0);
+        assertEquals(0, mSupervisor.getCoolDown(coolDown));
+    }
+
+    @Test
+    public void testShouldCountShortLivedConnectionAsFailure() throws Exception {
+        mSupervisor.onConnecting(0);
+        mSupervisor.onConnected(100);
+        mSupervisor.onDisconnected(200, true);
+
+        final ConnectionStats stats = mSupervisor.getStats();
+        assertEquals(1, stats.failures);
+        assertEquals(1, stats.consecutiveFailures);
+    }
+
+    @Test
+    public void testShouldResetConsecutiveFailuresAfterStableConnection() throws Exception {
+        mSupervisor.onFailed(0);
+        mSupervisor.onFailed(0);
+        mSupervisor.onConnecting(0);
+        mSupervisor.onConnected(100);
+        mSupervisor.onDisconnected(100 + ConnectionSupervisor.STABLE_CONNECTION, true);
+
+        final ConnectionStats stats = mSupervisor.getStats();
+        assertEquals(2, stats.failures);
+        assertEquals(0, stats.consecutiveFailures);
+    }
+
+    @Test
+    public void testShouldNotCountRequestedDisconnectionAsFailure() throws Exception {
+        mSupervisor.onConnecting(0);
+        mSupervisor.onConnected(100);
+        mSupervisor.onDisconnected(200, false);
+
+        assertEquals(0, mSupervisor.getStats().failures);
+    }
+
+    @Test
+    public void testShouldTrackBindLatency() throws Exception {
+        mSupervisor.onConnecting(0);
+        mSupervisor.onConnected(100);
+        mSupervisor.onDisconnected(100 + ConnectionSupervisor.STABLE_CONNECTION, false);
+        mSupervisor.onConnecting(20000);
+        mSupervisor.onConnected(20300);
+
+        final ConnectionStats stats = mSupervisor.getStats();
+        assertEquals(2, stats.attempts);
+        assertEquals(300, stats.lastBindLatency);
+        assertEquals(200, stats.averageBindLatency);
+    }
+}
@@ -7,12 +7,22 @@ import org.mockito.Mockito;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
 public class DefaultPurchaseVerifierTest {
@@ -45,4 +55,80 @@ public class DefaultPurchaseVerifierTest {
         mVerifier.verify(purchases, listener);
         Mockito.verify(listener).onSuccess(Mockito.eq(Collections.<Purchase>emptyList()));
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testShouldVerifySignedPurchases() throws Exception {
+        final KeyPair keys = newKeyPair();
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(Base64.encode(keys.getPublic().getEncoded()));
+        final List<Purchase> purchases = newPurchases(keys.getPrivate(), 10);
+        final List<Purchase> expected = new ArrayList<>(purchases);
+        // signature of another purchase
+        purchases.add(Purchase.fromJson(PurchaseTest.newJson(100, Purchase.State.PURCHASED), purchases.get(0).signature));
+
+        for (int i = 0; i < 2; i++) {
+            final RequestListener<List<Purchase>> listener = Mockito.mock(RequestListener.class);
+            verifier.verify(purchases, listener);
+            Mockito.verify(listener).onSuccess(Mockito.eq(expected));
+        }
+    }
+
+    @Test
+    public void testShouldVerifyOnDifferentThreads() throws Exception {
+        final KeyPair keys = newKeyPair();
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(Base64.encode(keys.getPublic().getEncoded()));
+        final List<Purchase> purchases = newPurchases(keys.getPrivate(), 20);
+        final int threads = 4;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final AtomicInteger verified = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    verifier.verify(purchases, new CountingListener(verified));
+                    latch.countDown();
+                }
+            }).start();
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * purchases.size(), verified.get());
+    }
+
+    @Nonnull
+    static KeyPair newKeyPair() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    @Nonnull
+    static List<Purchase> newPurchases(@Nonnull PrivateKey key, int count) throws Exception {
+        final Signature signature = Signature.getInstance("SHA1withRSA");
+        final List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String data = PurchaseTest.newJson(i, Purchase.State.PURCHASED);
+            signature.initSign(key);
+            signature.update(data.getBytes());
+            purchases.add(Purchase.fromJson(data, Base64.encode(signature.sign())));
+        }
+        return purchases;
+    }
+
+    private static class CountingListener implements RequestListener<List<Purchase>> {
+        @Nonnull
+        private final AtomicInteger mCount;
+
+        CountingListener(@Nonnull AtomicInteger count) {
+            mCount = count;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            mCount.addAndGet(result.size());
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+        }
+    }
+}
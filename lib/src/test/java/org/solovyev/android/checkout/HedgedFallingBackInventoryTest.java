@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.InAppBillingService;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import android.os.Looper;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+
+public class HedgedFallingBackInventoryTest extends FallingBackInventoryTest {
+
+    private static final long DELAY = 1000L;
+
+    @Nonnull
+    @Override
+    protected FallingBackInventory newInventory(@Nonnull Checkout checkout) {
+        // the main looper is not run by the inherited tests => the fallback inventory doesn't
+        // race with the main one and the callbacks are called exactly once
+        return new FallingBackInventory(checkout, new RobotmediaInventory(checkout, Tests.sameThreadExecutor()), DELAY);
+    }
+
+    @Test
+    public void testShouldStartFallbackBeforeMainInventoryFinishes() throws Exception {
+        final CountDownLatch latch = blockBillingSupported();
+        final Inventory fallback = mock(Inventory.class);
+        final FallingBackInventory inventory = new FallingBackInventory(mCheckout, fallback, 0);
+        mCheckout.start();
+
+        final TestCallback callback = new TestCallback();
+        inventory.load(mRequest, callback);
+
+        final ArgumentCaptor<Inventory.Callback> captor = ArgumentCaptor.forClass(Inventory.Callback.class);
+        verify(fallback).load(any(Inventory.Request.class), captor.capture());
+        // fallback products are delivered as stale until the main inventory has finished
+        captor.getValue().onLoaded(newFallbackProducts());
+        assertTrue(callback.mProducts.isStale());
+        assertFalse(callback.mProducts.get(IN_APP).supported);
+        assertEquals(1, callback.mProducts.get(SUBSCRIPTION).getPurchases().size());
+
+        latch.countDown();
+        Tests.waitWhileLoading(inventory);
+        assertFalse(callback.mProducts.isStale());
+        assertTrue(callback.mProducts.get(IN_APP).supported);
+        assertTrue(callback.mProducts.get(SUBSCRIPTION).supported);
+        assertEquals(1, callback.mProducts.get(SUBSCRIPTION).getPurchases().size());
+    }
+
+    @Test
+    public void testShouldStartFallbackAfterDelay() throws Exception {
+        final CountDownLatch latch = blockBillingSupported();
+        final Inventory fallback = mock(Inventory.class);
+        final FallingBackInventory inventory = new FallingBackInventory(mCheckout, fallback, DELAY);
+        mCheckout.start();
+
+        inventory.load(mRequest, new TestCallback());
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(DELAY / 2));
+        verify(fallback, never()).load(any(Inventory.Request.class), any(Inventory.Callback.class));
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(DELAY / 2));
+        verify(fallback).load(any(Inventory.Request.class), any(Inventory.Callback.class));
+        latch.countDown();
+    }
+
+    @Test
+    public void testShouldCancelFallbackIfMainInventoryIsEnough() throws Exception {
+        final InAppBillingService service = ((TestServiceConnector) mBilling.getConnector()).mService;
+        when(service.isBillingSupported(anyInt(), any(), eq(SUBSCRIPTION))).thenReturn(ResponseCodes.OK);
+        final Inventory fallback = mock(Inventory.class);
+        when(fallback.load(any(Inventory.Request.class), any(Inventory.Callback.class))).thenReturn(5);
+        final FallingBackInventory inventory = new FallingBackInventory(mCheckout, fallback, 0);
+        mCheckout.start();
+
+        final TestCallback callback = new TestCallback();
+        inventory.load(mRequest, callback);
+        Tests.waitWhileLoading(inventory);
+
+        assertTrue(callback.mProducts.get(SUBSCRIPTION).supported);
+        verify(fallback, timeout(1000)).cancel(5);
+    }
+
+    /**
+     * Makes the billing service to wait before answering whether billing is supported
+     *
+     * @return latch to be released to answer
+     */
+    @Nonnull
+    private CountDownLatch blockBillingSupported() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final InAppBillingService service = ((TestServiceConnector) mBilling.getConnector()).mService;
+        when(service.isBillingSupported(anyInt(), any(), eq(IN_APP))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                assertTrue(latch.await(1, SECONDS));
+                return ResponseCodes.OK;
+            }
+        });
+        return latch;
+    }
+
+    @Nonnull
+    private static Inventory.Products newFallbackProducts() throws Exception {
+        final Inventory.Products products = new Inventory.Products();
+        final Inventory.Product product = new Inventory.Product(SUBSCRIPTION, true);
+        product.setPurchases(singletonList(Purchase.fromJson(PurchaseTest.newJson(1, Purchase.State.PURCHASED), "")));
+        products.add(product);
+        return products;
+    }
+}
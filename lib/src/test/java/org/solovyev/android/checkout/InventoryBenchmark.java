@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+
+/**
+ * Loads big purchase histories with several concurrent inventory tasks and measures for how long
+ * another thread has to wait for {@link Checkout#mLock} meanwhile (the lock is needed by all the
+ * inventories of a {@link Checkout} and by {@link Checkout#whenReady(Checkout.Listener)}).
+ * Not run as a part of the test suite (see the test filter in build.gradle), run it manually.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InventoryBenchmark {
+
+    private static final int PURCHASES = 20000;
+    private static final int RUNS = 5;
+
+    @Test
+    public void benchmark() throws Exception {
+        Billing.setLogger(null);
+        final Billing billing = Tests.newBilling(false);
+        // results are delivered on the request thread
+        billing.setMainThread(Tests.sameThreadExecutor());
+        Tests.mockGetPurchases(billing, IN_APP, newPurchases());
+        Tests.mockGetPurchases(billing, SUBSCRIPTION, newPurchases());
+        final Checkout checkout = Checkout.forApplication(billing);
+        checkout.start();
+
+        for (int tasks : new int[]{1, 4, 16}) {
+            for (int run = 0; run < RUNS; run++) {
+                final LockProbe probe = new LockProbe(checkout.mLock);
+                probe.start();
+                final long start = System.nanoTime();
+                final List<Inventory> inventories = new ArrayList<>(tasks);
+                for (int i = 0; i < tasks; i++) {
+                    final Inventory inventory = checkout.makeInventory();
+                    inventory.load(Inventory.Request.create().loadAllPurchases(), new Inventory.Callback() {
+                        @Override
+                        public void onLoaded(@Nonnull Inventory.Products products) {
+                        }
+                    });
+                    inventories.add(inventory);
+                }
+                for (Inventory inventory : inventories) {
+                    while (inventory.isLoading()) {
+                        Thread.sleep(1);
+                    }
+                }
+                final long elapsed = System.nanoTime() - start;
+                probe.finish();
+                if (run == RUNS - 1) {
+                    System.out.println(tasks + " task(s): " + elapsed / 1000000 + " ms total, lock wait max "
+                            + probe.mMaxWait / 1000000d + " ms, lock wait total " + probe.mTotalWait / 1000000d + " ms");
+                }
+            }
+        }
+        checkout.stop();
+    }
+
+    @Nonnull
+    private static List<Purchase> newPurchases() throws Exception {
+        final List<Purchase> purchases = new ArrayList<>(PURCHASES);
+        for (int i = 0; i < PURCHASES; i++) {
+            purchases.add(Purchase.fromJson(PurchaseTest.newJson(i, Purchase.State.PURCHASED), ""));
+        }
+        return purchases;
+    }
+
+    /**
+     * Repeatedly acquires the lock and remembers how long it had to wait for it
+     */
+    private static final class LockProbe extends Thread {
+        @Nonnull
+        private final Object mLock;
+        private volatile boolean mFinished;
+        private long mMaxWait;
+        private long mTotalWait;
+
+        LockProbe(@Nonnull Object lock) {
+            mLock = lock;
+        }
+
+        @Override
+        public void run() {
+            while (!mFinished) {
+                final long start = System.nanoTime();
+                synchronized (mLock) {
+                    final long wait = System.nanoTime() - start;
+                    mMaxWait = Math.max(mMaxWait, wait);
+                    mTotalWait += wait;
+                }
+                Thread.yield();
+            }
+        }
+
+        void finish() throws InterruptedException {
+            mFinished = true;
+            join();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.InAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.RequestTestBase.newBundle;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InventoryLoaderTest {
+
+    @Nonnull
+    private final CountDownLatch mServiceLatch = new CountDownLatch(1);
+    private Billing mBilling;
+    private InAppBillingService mService;
+    private InventoryLoader mLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newBilling(false);
+        mService = ((TestServiceConnector) mBilling.getConnector()).mService;
+        mLoader = mBilling.getInventoryLoader();
+        when(mService.getPurchases(anyInt(), any(), eq(IN_APP), isNull(String.class))).thenAnswer(new BlockingAnswer() {
+            @Nonnull
+            @Override
+            protected Bundle answer(@Nonnull Object[] args) throws Exception {
+                final Bundle bundle = newBundle(OK);
+                bundle.putStringArrayList(Purchases.BUNDLE_DATA_LIST, new ArrayList<>(asList(PurchaseTest.newJson(1, Purchase.State.PURCHASED))));
+                return bundle;
+            }
+        });
+        when(mService.getSkuDetails(anyInt(), any(), eq(IN_APP), any(Bundle.class))).thenAnswer(new BlockingAnswer() {
+            @Nonnull
+            @Override
+            protected Bundle answer(@Nonnull Object[] args) throws Exception {
+                final ArrayList<String> list = new ArrayList<>();
+                for (String sku : ((Bundle) args[3]).getStringArrayList("ITEM_ID_LIST")) {
+                    list.add(SkuTest.newInAppJson(sku));
+                }
+                final Bundle bundle = newBundle(OK);
+                bundle.putStringArrayList(Skus.BUNDLE_LIST, list);
+                return bundle;
+            }
+        });
+    }
+
+    @Nonnull
+    private Billing.Requests newRequests(@Nonnull Object tag) {
+        return (Billing.Requests) mBilling.newRequestsBuilder().withTag(tag).onBackgroundThread().create();
+    }
+
+    @Test
+    public void testShouldLoadPurchasesOnce() throws Exception {
+        final TestListener<Purchases> l1 = new TestListener<>();
+        final TestListener<Purchases> l2 = new TestListener<>();
+
+        mLoader.loadPurchases(newRequests("1"), IN_APP, l1);
+        mLoader.loadPurchases(newRequests("2"), IN_APP, l2);
+        mServiceLatch.countDown();
+
+        assertNotNull(l1.await());
+        assertSame(l1.await(), l2.await());
+        assertEquals(1, l1.await().list.size());
+        verify(mService, times(1)).getPurchases(anyInt(), any(), eq(IN_APP), isNull(String.class));
+    }
+
+    @Test
+    public void testShouldLoadOnlyMissingSkus() throws Exception {
+        final TestListener<Skus> l1 = new TestListener<>();
+        final TestListener<Skus> l2 = new TestListener<>();
+
+        mLoader.loadSkus(newRequests("1"), IN_APP, asList("1", "2"), l1);
+        mLoader.loadSkus(newRequests("2"), IN_APP, asList("3", "2"), l2);
+        mServiceLatch.countDown();
+
+        assertSkus(l1.await(), "1", "2");
+        assertSkus(l2.await(), "3", "2");
+        final ArgumentCaptor<Bundle> captor = ArgumentCaptor.forClass(Bundle.class);
+        verify(mService, times(2)).getSkuDetails(anyInt(), any(), eq(IN_APP), captor.capture());
+        assertEquals(asList("1", "2"), captor.getAllValues().get(0).getStringArrayList("ITEM_ID_LIST"));
+        assertEquals(asList("3"), captor.getAllValues().get(1).getStringArrayList("ITEM_ID_LIST"));
+    }
+
+    @Test
+    public void testShouldNotNotifyCancelledCaller() throws Exception {
+        final TestListener<Purchases> l1 = new TestListener<>();
+        final TestListener<Purchases> l2 = new TestListener<>();
+        final Billing.Requests r1 = newRequests("1");
+
+        mLoader.loadPurchases(r1, IN_APP, l1);
+        mLoader.loadPurchases(newRequests("2"), IN_APP, l2);
+        r1.cancelAll();
+        mServiceLatch.countDown();
+
+        assertNotNull(l2.await());
+        assertNull(l1.mResult);
+        assertFalse(l1.mErrored);
+    }
+
+    @Test
+    public void testShouldLoadAgainAfterPreviousLoadIsFinished() throws Exception {
+        mServiceLatch.countDown();
+        final TestListener<Purchases> l1 = new TestListener<>();
+        mLoader.loadPurchases(newRequests("1"), IN_APP, l1);
+        assertNotNull(l1.await());
+
+        final TestListener<Purchases> l2 = new TestListener<>();
+        mLoader.loadPurchases(newRequests("2"), IN_APP, l2);
+        assertNotNull(l2.await());
+
+        verify(mService, times(2)).getPurchases(anyInt(), any(), eq(IN_APP), isNull(String.class));
+    }
+
+    @Test
+    public void testShouldNotJoinLoadStartedBeforePurchase() throws Exception {
+        final TestListener<Purchases> l1 = new TestListener<>();
+        final TestListener<Purchases> l2 = new TestListener<>();
+
+        mLoader.loadPurchases(newRequests("1"), IN_APP, l1);
+        // purchase is made in the Play Store while the purchases are loading
+        RuntimeEnvironment.application.sendBroadcast(new Intent("com.android.vending.billing.PURCHASES_UPDATED"));
+        shadowOf(Looper.getMainLooper()).idle();
+        mLoader.loadPurchases(newRequests("2"), IN_APP, l2);
+        mServiceLatch.countDown();
+
+        assertNotNull(l1.await());
+        assertNotNull(l2.await());
+        assertNotSame(l1.await(), l2.await());
+        verify(mService, times(2)).getPurchases(anyInt(), any(), eq(IN_APP), isNull(String.class));
+    }
+
+    private static void assertSkus(@Nonnull Skus skus, @Nonnull String... expected) {
+        assertEquals(IN_APP, skus.product);
+        assertEquals(expected.length, skus.list.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], skus.list.get(i).id.code);
+        }
+    }
+
+    private abstract class BlockingAnswer implements Answer<Bundle> {
+        @Override
+        public final Bundle answer(InvocationOnMock invocation) throws Throwable {
+            assertTrue(mServiceLatch.await(1, SECONDS));
+            return answer(invocation.getArguments());
+        }
+
+        @Nonnull
+        protected abstract Bundle answer(@Nonnull Object[] args) throws Exception;
+    }
+
+    private static final class TestListener<R> implements RequestListener<R> {
+        @Nonnull
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        @Nullable
+        private volatile R mResult;
+        private volatile boolean mErrored;
+
+        @Override
+        public void onSuccess(@Nonnull R result) {
+            mResult = result;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            mErrored = true;
+            mLatch.countDown();
+        }
+
+        @Nullable
+        R await() throws InterruptedException {
+            assertTrue(mLatch.await(1, SECONDS));
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InventorySnapshotTest {
+
+    @Nonnull
+    private File mFile;
+    @Nonnull
+    private InventorySnapshot mSnapshot;
+
+    @Nonnull
+    static Inventory.Products newProducts() throws Exception {
+        final Inventory.Products products = new Inventory.Products();
+        final Inventory.Product inApp = new Inventory.Product(IN_APP, true);
+        inApp.setPurchases(asList(Purchase.fromJson(PurchaseTest.newJson(1, PURCHASED), "signature")));
+        inApp.setSkus(asList(Sku.fromJson(SkuTest.newInAppJson("1"), IN_APP), Sku.fromJson(SkuTest.newInAppJson("2"), IN_APP)));
+        products.add(inApp);
+        products.add(new Inventory.Product(SUBSCRIPTION, false));
+        return products;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(RuntimeEnvironment.application.getFilesDir(), "snapshot");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mSnapshot = new InventorySnapshot(mFile);
+    }
+
+    @Test
+    public void testShouldRestoreSavedProducts() throws Exception {
+        final Inventory.Products expected = newProducts();
+        mSnapshot.write(expected);
+
+        final Inventory.Products actual = mSnapshot.read();
+
+        assertNotNull(actual);
+        assertTrue(actual.isStale());
+        assertFalse(expected.isStale());
+        final Inventory.Product inApp = actual.get(IN_APP);
+        assertTrue(inApp.supported);
+        assertEquals(1, inApp.getPurchases().size());
+        final Purchase purchase = inApp.getPurchases().get(0);
+        assertEquals(expected.get(IN_APP).getPurchases().get(0).data, purchase.data);
+        assertEquals("signature", purchase.signature);
+        assertEquals(2, inApp.getSkus().size());
+        assertEquals(expected.get(IN_APP).getSkus(), inApp.getSkus());
+        final Inventory.Product sub = actual.get(SUBSCRIPTION);
+        assertFalse(sub.supported);
+        assertFalse(sub.mPurchasesLoaded);
+        assertFalse(sub.mSkusLoaded);
+    }
+
+    @Test
+    public void testShouldReturnNullIfThereIsNoSnapshot() throws Exception {
+        assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void testShouldReturnNullIfSnapshotIsCorrupted() throws Exception {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        out.write("{\"version\":1,\"products\":[{".getBytes("UTF-8"));
+        out.close();
+
+        assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void testShouldDeliverStaleProductsBeforeLoadedProducts() throws Exception {
+        mSnapshot.write(newProducts());
+        final Billing billing = Tests.newBilling();
+        final Checkout checkout = Checkout.forApplication(billing);
+        checkout.start();
+        final PendingInventory pending = new PendingInventory();
+        final SnapshotInventory inventory = new SnapshotInventory(checkout, pending, mSnapshot, Tests.sameThreadExecutor(), Tests.sameThreadExecutor());
+        final RecordingCallback callback = new RecordingCallback();
+
+        inventory.load(Inventory.Request.create().loadAllPurchases(), callback);
+
+        assertEquals(1, callback.mProducts.size());
+        assertTrue(callback.mProducts.get(0).isStale());
+        assertTrue(inventory.isLoading());
+
+        final Inventory.Products loaded = new Inventory.Products();
+        final Inventory.Product inApp = new Inventory.Product(IN_APP, true);
+        inApp.setPurchases(new ArrayList<Purchase>());
+        loaded.add(inApp);
+        pending.mCallback.onLoaded(loaded);
+
+        assertEquals(2, callback.mProducts.size());
+        assertFalse(callback.mProducts.get(1).isStale());
+        assertFalse(inventory.isLoading());
+        // the snapshot should be updated
+        final Inventory.Products saved = mSnapshot.read();
+        assertNotNull(saved);
+        assertTrue(saved.get(IN_APP).getPurchases().isEmpty());
+    }
+
+    @Test
+    public void testShouldKeepPreviousDataWhichFailedToLoad() throws Exception {
+        mSnapshot.write(newProducts());
+        final Inventory.Products loaded = new Inventory.Products();
+        // purchases failed to load, SKUs were loaded
+        final Inventory.Product inApp = new Inventory.Product(IN_APP, true);
+        inApp.setSkus(asList(Sku.fromJson(SkuTest.newInAppJson("3"), IN_APP)));
+        loaded.add(inApp);
+
+        mSnapshot.update(loaded);
+
+        final Inventory.Products saved = mSnapshot.read();
+        assertNotNull(saved);
+        assertEquals(1, saved.get(IN_APP).getPurchases().size());
+        assertEquals("signature", saved.get(IN_APP).getPurchases().get(0).signature);
+        assertEquals(1, saved.get(IN_APP).getSkus().size());
+        assertEquals("3", saved.get(IN_APP).getSkus().get(0).id.code);
+        assertFalse(saved.get(SUBSCRIPTION).supported);
+    }
+
+    private static final class PendingInventory implements Inventory {
+        private Callback mCallback;
+
+        @Override
+        public int load(@Nonnull Request request, @Nonnull Callback callback) {
+            mCallback = callback;
+            return 0;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void cancel(int id) {
+        }
+
+        @Override
+        public boolean isLoading() {
+            return mCallback != null;
+        }
+    }
+
+    private static final class RecordingCallback implements Inventory.Callback {
+        @Nonnull
+        private final List<Inventory.Products> mProducts = new ArrayList<>();
+
+        @Override
+        public void onLoaded(@Nonnull Inventory.Products products) {
+            mProducts.add(products);
+        }
+    }
+}
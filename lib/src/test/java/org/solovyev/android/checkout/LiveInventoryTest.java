@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.InAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Intent;
+import android.os.Looper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LiveInventoryTest {
+
+    private Billing mBilling;
+    private Checkout mCheckout;
+    private LiveInventory mInventory;
+    private TestObserver mObserver;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newSynchronousBilling();
+        final InAppBillingService service = ((TestServiceConnector) mBilling.getConnector()).mService;
+        when(service.consumePurchase(anyInt(), any(), any())).thenReturn(OK);
+        Tests.mockGetPurchases(mBilling, IN_APP, asList(Purchase.fromJson(PurchaseTest.newJson(1, Purchase.State.PURCHASED), "")));
+        mCheckout = Checkout.forApplication(mBilling);
+        mCheckout.start();
+        mInventory = mCheckout.makeLiveInventory(Inventory.Request.create().loadAllPurchases());
+        mObserver = new TestObserver();
+        mInventory.addObserver(mObserver);
+    }
+
+    @Test
+    public void testShouldLoadWhenStarted() throws Exception {
+        mInventory.start();
+
+        assertEquals(1, mObserver.mProducts.size());
+        assertEquals(1, mObserver.getLast().get(IN_APP).getPurchases().size());
+        assertSame(mObserver.getLast(), mInventory.getProducts());
+    }
+
+    @Test
+    public void testShouldReloadOnceAfterSeveralChanges() throws Exception {
+        mInventory.start();
+        Tests.mockGetPurchases(mBilling, IN_APP, asList(Purchase.fromJson(PurchaseTest.newJson(1, Purchase.State.PURCHASED), ""),
+                Purchase.fromJson(PurchaseTest.newJson(2, Purchase.State.PURCHASED), "")));
+
+        sendPlayStoreBroadcast();
+        sendPlayStoreBroadcast();
+        mBilling.getRequests().consume("token", mock(RequestListener.class));
+        sendPlayStoreBroadcast();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, mObserver.mProducts.size());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(LiveInventory.DELAY));
+        assertEquals(2, mObserver.mProducts.size());
+        assertEquals(2, mObserver.getLast().get(IN_APP).getPurchases().size());
+    }
+
+    @Test
+    public void testShouldNotifyObserverAddedAfterLoading() throws Exception {
+        mInventory.start();
+
+        final TestObserver observer = new TestObserver();
+        mInventory.addObserver(observer);
+
+        assertEquals(1, observer.mProducts.size());
+        assertSame(mObserver.getLast(), observer.getLast());
+    }
+
+    @Test
+    public void testShouldStopWhenCheckoutStops() throws Exception {
+        mInventory.start();
+
+        mCheckout.stop();
+        assertFalse(mInventory.isStarted());
+        sendPlayStoreBroadcast();
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(LiveInventory.DELAY));
+
+        assertEquals(1, mObserver.mProducts.size());
+    }
+
+    @Test
+    public void testShouldNotKeepStoppedInventories() throws Exception {
+        mInventory.start();
+        final LiveInventory other = mCheckout.makeLiveInventory(Inventory.Request.create().loadAllPurchases());
+        other.start();
+        other.stop();
+        assertEquals(1, getLiveInventoriesCount());
+
+        mCheckout.stop();
+        assertEquals(0, getLiveInventoriesCount());
+
+        mCheckout.start();
+        mInventory.start();
+        assertEquals(1, getLiveInventoriesCount());
+    }
+
+    private int getLiveInventoriesCount() {
+        synchronized (mCheckout.mLock) {
+            return mCheckout.mLiveInventories.size();
+        }
+    }
+
+    @Test
+    public void testShouldNotReloadBeforeStarted() throws Exception {
+        mBilling.getRequests().consume("token", mock(RequestListener.class));
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(LiveInventory.DELAY));
+
+        assertTrue(mObserver.mProducts.isEmpty());
+    }
+
+    @Test
+    public void testShouldNotifyObserversOnMainThreadForApplicationCheckout() throws Exception {
+        final Billing billing = Tests.newBilling();
+        Tests.mockGetPurchases(billing, IN_APP, asList(Purchase.fromJson(PurchaseTest.newJson(1, Purchase.State.PURCHASED), "")));
+        final Checkout checkout = Checkout.forApplication(billing);
+        checkout.start();
+        final LiveInventory inventory = checkout.makeLiveInventory(Inventory.Request.create().loadAllPurchases());
+        final TestObserver observer = new TestObserver();
+        inventory.addObserver(observer);
+
+        inventory.start();
+        int sleeping = 0;
+        while (observer.mProducts.isEmpty()) {
+            Thread.sleep(50L);
+            shadowOf(Looper.getMainLooper()).idle();
+            sleeping += 50;
+            assertTrue("Too long wait!", sleeping <= 1000);
+        }
+
+        assertEquals(1, observer.getLast().get(IN_APP).getPurchases().size());
+        assertSame(observer.getLast(), inventory.getProducts());
+        for (Thread thread : observer.mThreads) {
+            assertSame(Looper.getMainLooper().getThread(), thread);
+        }
+        checkout.stop();
+    }
+
+    private static void sendPlayStoreBroadcast() {
+        RuntimeEnvironment.application.sendBroadcast(new Intent("com.android.vending.billing.PURCHASES_UPDATED"));
+    }
+
+    private static final class TestObserver implements Inventory.Callback {
+        @Nonnull
+        private final List<Inventory.Products> mProducts = new ArrayList<>();
+        @Nonnull
+        private final List<Thread> mThreads = new ArrayList<>();
+
+        @Override
+        public void onLoaded(@Nonnull Inventory.Products products) {
+            mThreads.add(Thread.currentThread());
+            mProducts.add(products);
+        }
+
+        @Nonnull
+        Inventory.Products getLast() {
+            return mProducts.get(mProducts.size() - 1);
+        }
+    }
+}
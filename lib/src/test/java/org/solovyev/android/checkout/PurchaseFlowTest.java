@@ -32,13 +32,20 @@ import org.robolectric.annotation.Config;
 import android.app.Activity;
 import android.content.Intent;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import static android.app.Activity.RESULT_OK;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -75,7 +82,7 @@ public class PurchaseFlowTest {
         mListener = mock(RequestListener.class);
         mVerifier = mock(PurchaseVerifier.class);
         Tests.mockVerifier(mVerifier, false);
-        mFlow = new PurchaseFlow(Mockito.mock(IntentStarter.class), 1, mListener, mVerifier);
+        mFlow = new PurchaseFlow(Mockito.mock(IntentStarter.class), 1, mListener, mVerifier, Tests.sameThreadExecutor(), Tests.sameThreadExecutor());
     }
 
     @Test
@@ -159,4 +166,47 @@ public class PurchaseFlowTest {
         verify(mListener, never()).onError(anyInt(), any(Exception.class));
         verify(mListener, never()).onSuccess(any(Purchase.class));
     }
+
+    @Test
+    public void testShouldVerifyOnBackgroundThread() throws Exception {
+        Tests.mockVerifier(mVerifier, true);
+        final List<Runnable> background = new ArrayList<>();
+        final List<Runnable> mainThread = new ArrayList<>();
+        final PurchaseFlow flow = new PurchaseFlow(Mockito.mock(IntentStarter.class), 1, mListener, mVerifier, new ListExecutor(background), new ListExecutor(mainThread));
+
+        flow.onActivityResult(1, RESULT_OK, newOkIntent());
+        verify(mVerifier, never()).verify(anyList(), any(RequestListener.class));
+
+        assertEquals(1, background.size());
+        background.get(0).run();
+        verify(mVerifier).verify(anyList(), any(RequestListener.class));
+        verify(mListener, never()).onSuccess(any(Purchase.class));
+
+        assertEquals(1, mainThread.size());
+        mainThread.get(0).run();
+        verify(mListener).onSuccess(any(Purchase.class));
+    }
+
+    @Test
+    public void testShouldErrorIfVerifierThrows() throws Exception {
+        doThrow(new IllegalArgumentException()).when(mVerifier).verify(anyList(), any(RequestListener.class));
+
+        mFlow.onActivityResult(1, RESULT_OK, newOkIntent());
+
+        verifyError(ResponseCodes.EXCEPTION, IllegalArgumentException.class);
+    }
+
+    private static final class ListExecutor implements Executor {
+        @Nonnull
+        private final List<Runnable> mRunnables;
+
+        ListExecutor(@Nonnull List<Runnable> runnables) {
+            mRunnables = runnables;
+        }
+
+        @Override
+        public void execute(@Nonnull Runnable command) {
+            mRunnables.add(command);
+        }
+    }
 }
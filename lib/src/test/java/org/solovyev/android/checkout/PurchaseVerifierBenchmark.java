@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures the throughput of {@link DefaultPurchaseVerifier} for 1, 10 and 1000 purchases and
+ * compares it with verification which parses the public key and creates a {@link Signature} for
+ * each purchase. Not run as a part of the test suite, use {@link #main(String[])} to run it.
+ */
+public final class PurchaseVerifierBenchmark {
+
+    private static final long DURATION_MS = 2000;
+
+    private PurchaseVerifierBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Billing.setLogger(null);
+        final KeyPair keys = DefaultPurchaseVerifierTest.newKeyPair();
+        final String publicKey = Base64.encode(keys.getPublic().getEncoded());
+        final List<Purchase> warmUp = DefaultPurchaseVerifierTest.newPurchases(keys.getPrivate(), 10);
+        run(publicKey, warmUp, false, DURATION_MS);
+        run(publicKey, warmUp, true, DURATION_MS);
+        for (int size : new int[]{1, 10, 1000}) {
+            final List<Purchase> purchases = DefaultPurchaseVerifierTest.newPurchases(keys.getPrivate(), size);
+            System.out.println("verifier, " + size + " purchases: " + measure(publicKey, purchases, false) + " purchases/s");
+            System.out.println("reference, " + size + " purchases: " + measure(publicKey, purchases, true) + " purchases/s");
+        }
+    }
+
+    private static long measure(@Nonnull String publicKey, @Nonnull List<Purchase> purchases, boolean reference) throws Exception {
+        return run(publicKey, purchases, reference, DURATION_MS) * 1000 / DURATION_MS;
+    }
+
+    private static long run(@Nonnull String publicKey, @Nonnull List<Purchase> purchases, boolean reference, long duration) throws Exception {
+        // as in Billing the same verifier is used for all the requests
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(publicKey);
+        final Listener listener = new Listener();
+        long verified = 0;
+        final long end = System.currentTimeMillis() + duration;
+        while (System.currentTimeMillis() < end) {
+            if (reference) {
+                verified += verifyReference(publicKey, purchases);
+            } else {
+                verifier.verify(purchases, listener);
+                verified += listener.mVerified.size();
+            }
+        }
+        return verified;
+    }
+
+    private static int verifyReference(@Nonnull String publicKey, @Nonnull List<Purchase> purchases) throws Exception {
+        final List<Purchase> verified = new ArrayList<>(purchases.size());
+        for (Purchase purchase : purchases) {
+            final PublicKey key = Security.generatePublicKey(publicKey);
+            final Signature sig = Signature.getInstance("SHA1withRSA");
+            sig.initVerify(key);
+            sig.update(purchase.data.getBytes());
+            if (sig.verify(Base64.decode(purchase.signature))) {
+                verified.add(purchase);
+            }
+        }
+        return verified.size();
+    }
+
+    private static final class Listener implements RequestListener<List<Purchase>> {
+        @Nonnull
+        private List<Purchase> mVerified = new ArrayList<>();
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            mVerified = result;
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures {@link Purchases#neutralize(List)} on large purchase histories and compares it with the
+ * reference implementation from {@link PurchasesTest}. Not run as a part of the test suite, use
+ * {@link #main(String[])} to run it.
+ */
+public final class PurchasesBenchmark {
+
+    private static final int WARM_UP = 5;
+    private static final int ITERATIONS = 20;
+
+    private PurchasesBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) {
+        Billing.setLogger(null);
+        final Random r = new Random(0);
+        for (int size : new int[]{1000, 10000, 100000}) {
+            final List<Purchase> purchases = newHistory(size, 100, r);
+            System.out.println("neutralize, " + size + " purchases: " + measure(purchases, false) + " ms/op");
+            if (size <= 10000) {
+                // reference implementation is quadratic, don't wait for it on larger inputs
+                System.out.println("reference, " + size + " purchases: " + measure(purchases, true) + " ms/op");
+            }
+        }
+    }
+
+    private static double measure(@Nonnull List<Purchase> purchases, boolean reference) {
+        for (int i = 0; i < WARM_UP; i++) {
+            neutralize(purchases, reference);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            neutralize(purchases, reference);
+        }
+        return (System.nanoTime() - start) / 1000000d / ITERATIONS;
+    }
+
+    private static List<Purchase> neutralize(@Nonnull List<Purchase> purchases, boolean reference) {
+        return reference ? PurchasesTest.neutralizeReference(purchases) : Purchases.neutralize(purchases);
+    }
+
+    @Nonnull
+    static List<Purchase> newHistory(int size, int skus, @Nonnull Random r) {
+        final List<Purchase> purchases = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Purchase.State state = Purchase.State.valueOf(r.nextInt(4));
+            purchases.add(new Purchase(String.valueOf(r.nextInt(skus)), "", "", r.nextInt(size), state.id, "", "", false, "", ""));
+        }
+        return purchases;
+    }
+}
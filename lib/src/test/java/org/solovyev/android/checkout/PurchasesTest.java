@@ -37,6 +37,7 @@ import android.os.Bundle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -49,6 +50,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.solovyev.android.checkout.Purchase.State.CANCELLED;
 import static org.solovyev.android.checkout.Purchase.State.EXPIRED;
@@ -332,6 +334,120 @@ public class PurchasesTest {
         }
     }
 
+    @Test
+    public void testShouldNeutralizeSameAsReferenceImplementation() throws Exception {
+        final Random r = new Random(currentTimeMillis());
+        for (int run = 0; run < 50; run++) {
+            final int size = r.nextInt(300);
+            final int skus = 1 + r.nextInt(20);
+            final List<Purchase> purchases = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                // small time range => many purchases with the same time
+                purchases.add(newPurchase(String.valueOf(r.nextInt(skus)), r.nextInt(size + 1), Purchase.State.valueOf(r.nextInt(4))));
+            }
+            final List<Purchase> copy = new ArrayList<>(purchases);
+
+            final List<Purchase> expected = neutralizeReference(purchases);
+            final List<Purchase> actual = Purchases.neutralize(purchases);
+
+            assertEquals(copy, purchases);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testShouldNeutralizeLargeHistory() throws Exception {
+        final List<Purchase> purchases = PurchasesBenchmark.newHistory(100000, 100, new Random(0));
+
+        final List<Purchase> actual = Purchases.neutralize(purchases);
+
+        assertTrue(actual.size() <= 100);
+    }
+
+    @Test
+    public void testShouldFindFirstPurchaseInList() throws Exception {
+        final List<Purchase> list = new ArrayList<>(500);
+        final Random r = new Random(currentTimeMillis());
+        for (int i = 0; i < 500; i++) {
+            list.add(newPurchase(String.valueOf(r.nextInt(50)), i, Purchase.State.valueOf(r.nextInt(4))));
+        }
+        final Purchases purchases = new Purchases("test", list, null);
+
+        for (int i = 0; i < 60; i++) {
+            final String sku = String.valueOf(i);
+            Purchase expected = null;
+            for (Purchase purchase : list) {
+                if (purchase.sku.equals(sku)) {
+                    expected = purchase;
+                    break;
+                }
+            }
+            assertSame(expected, purchases.getPurchase(sku));
+            for (Purchase.State state : Purchase.State.values()) {
+                Purchase expectedInState = null;
+                for (Purchase purchase : list) {
+                    if (purchase.sku.equals(sku) && purchase.state == state) {
+                        expectedInState = purchase;
+                        break;
+                    }
+                }
+                assertSame(expectedInState, purchases.getPurchaseInState(sku, state));
+            }
+        }
+    }
+
+    /**
+     * Original (quadratic) implementation of {@link Purchases#neutralize(List)}, kept as a reference
+     */
+    @Nonnull
+    static List<Purchase> neutralizeReference(@Nonnull List<Purchase> purchases) {
+        purchases = new LinkedList<>(purchases);
+
+        final List<Purchase> result = new ArrayList<>(purchases.size());
+
+        Collections.sort(purchases, PurchaseComparator.earliestFirst());
+        while (!purchases.isEmpty()) {
+            final Purchase purchase = purchases.get(0);
+            if (purchase.state == PURCHASED) {
+                if (!isNeutralized(purchases, purchase)) {
+                    result.add(purchase);
+                }
+            } else if (!isDangling(purchases, purchase)) {
+                result.add(purchase);
+            }
+            purchases.remove(0);
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static boolean isDangling(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
+        for (int i = 1; i < purchases.size(); i++) {
+            final Purchase same = purchases.get(i);
+            if (same.sku.equals(purchase.sku)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNeutralized(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
+        for (int i = 1; i < purchases.size(); i++) {
+            final Purchase same = purchases.get(i);
+            if (same.sku.equals(purchase.sku)) {
+                if (same.state != PURCHASED) {
+                    purchases.remove(i);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Nonnull
     private Purchase newPurchase(@Nonnull String sku, long time, @Nonnull Purchase.State state) {
         return new Purchase(sku, "", "", time, state.id, "", "", false, "", "");
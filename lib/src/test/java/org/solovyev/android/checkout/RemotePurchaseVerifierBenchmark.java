@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+package org.solovyev.android.checkout;
+
+import android.os.Handler;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures throughput and latency of {@link RemotePurchaseVerifier} talking to an in-process
+ * {@link VerificationServer} (which simulates the network round-trip) with and without batching
+ * for the same number of requests running at the same time (i.e. connections used). Unbounded
+ * one-request-per-verification and the cached verifications are measured for comparison.
+ * Not run as a part of the test suite, use {@link #main(String[])} to run it.
+ */
+public final class RemotePurchaseVerifierBenchmark {
+
+    private static final long LATENCY_MS = 20;
+    private static final int CLIENTS = 16;
+    private static final int VERIFICATIONS = 50;
+
+    private RemotePurchaseVerifierBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Billing.setLogger(null);
+        final KeyPair keys = DefaultPurchaseVerifierTest.newKeyPair();
+        final List<Purchase> purchases = DefaultPurchaseVerifierTest.newPurchases(keys.getPrivate(), 1);
+        final VerificationServer server = new VerificationServer(keys.getPublic(), LATENCY_MS);
+        try {
+            // warm up
+            run(server, purchases, CLIENTS, 1, false);
+            run(server, purchases, 2, RemotePurchaseVerifier.DEFAULT_MAX_BATCH_SIZE, false);
+            for (int maxRequests : new int[]{RemotePurchaseVerifier.DEFAULT_MAX_REQUESTS, 4}) {
+                System.out.println(maxRequests + " requests, not batched: " + run(server, purchases, maxRequests, 1, false));
+                System.out.println(maxRequests + " requests, batched: " + run(server, purchases, maxRequests, RemotePurchaseVerifier.DEFAULT_MAX_BATCH_SIZE, false));
+            }
+            System.out.println(CLIENTS + " requests, not batched: " + run(server, purchases, CLIENTS, 1, false));
+            System.out.println("default (cached): " + run(server, purchases, RemotePurchaseVerifier.DEFAULT_MAX_REQUESTS, RemotePurchaseVerifier.DEFAULT_MAX_BATCH_SIZE, true));
+        } finally {
+            server.stop();
+            BackgroundThreads.getDefault().shutdown();
+        }
+    }
+
+    @Nonnull
+    private static String run(@Nonnull VerificationServer server, @Nonnull final List<Purchase> purchases, int maxRequests, int maxBatchSize, boolean cache) throws Exception {
+        // there is no main looper outside of Robolectric, the handler is never used as doVerify
+        // is called directly (the same way verify calls it on a background thread)
+        final RemotePurchaseVerifier verifier = new RemotePurchaseVerifier(server.getUrl(), maxRequests, maxBatchSize, cache, mock(Handler.class), BackgroundThreads.getDefault());
+        final int requests = server.mRequests.get();
+        final AtomicLong latency = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(CLIENTS);
+        final long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Listener listener = new Listener();
+                    for (int j = 0; j < VERIFICATIONS; j++) {
+                        final long begin = System.nanoTime();
+                        verifier.doVerify(purchases, listener);
+                        latency.addAndGet(System.nanoTime() - begin);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+        final long verifications = CLIENTS * VERIFICATIONS;
+        return verifications * 1000000000L / elapsed + " verifications/s, "
+                + latency.get() / verifications / 1000000 + " ms average latency, "
+                + (server.mRequests.get() - requests) + " requests";
+    }
+
+    private static class Listener implements RequestListener<List<Purchase>> {
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            if (result.isEmpty()) {
+                throw new AssertionError("Purchase is not verified");
+            }
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
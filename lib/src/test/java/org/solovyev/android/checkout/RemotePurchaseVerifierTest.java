@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+package org.solovyev.android.checkout;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.net.HttpURLConnection;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RemotePurchaseVerifierTest {
+
+    private static KeyPair sKeys;
+    private BackgroundThreads mThreads;
+    private VerificationServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        if (sKeys == null) {
+            sKeys = DefaultPurchaseVerifierTest.newKeyPair();
+        }
+        mThreads = new BackgroundThreads(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mThreads.shutdown();
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void testShouldVerifyPurchasesOnServer() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 0);
+        final RemotePurchaseVerifier verifier = newVerifier(1, 100);
+        final List<Purchase> purchases = DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 5);
+        final List<Purchase> all = new ArrayList<>(purchases);
+        // signature of another purchase
+        all.add(2, Purchase.fromJson(PurchaseTest.newJson(10, Purchase.State.PURCHASED), purchases.get(0).signature));
+
+        final Listener listener = verifyInBackground(verifier, all);
+
+        assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+        assertNull(listener.mException);
+        assertEquals(purchases, listener.mVerified);
+        assertEquals(1, mServer.mRequests.get());
+    }
+
+    @Test
+    public void testShouldBatchConcurrentVerifications() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 500);
+        final RemotePurchaseVerifier verifier = newVerifier(1, 100);
+        final List<Listener> listeners = new ArrayList<>();
+        final List<List<Purchase>> purchases = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            final List<Purchase> p = DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 2);
+            final Listener listener = new Listener();
+            purchases.add(p);
+            listeners.add(listener);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    verifier.verify(p, listener);
+                }
+            }).start();
+        }
+
+        start.countDown();
+
+        for (int i = 0; i < listeners.size(); i++) {
+            final Listener listener = listeners.get(i);
+            assertTrue(listener.mLatch.await(10, TimeUnit.SECONDS));
+            assertNull(listener.mException);
+            assertEquals(purchases.get(i), listener.mVerified);
+        }
+        assertEquals(8, mServer.mPurchases.get());
+        // the first verification is sent alone, the others wait for it and are sent together
+        assertTrue(mServer.mRequests.get() <= 2);
+    }
+
+    @Test
+    public void testShouldNotSendVerifiedPurchasesAgain() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 0);
+        final RemotePurchaseVerifier verifier = newVerifier(1, 100, true);
+        final List<Purchase> purchases = DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 3);
+        final List<Purchase> all = new ArrayList<>(purchases);
+        all.add(Purchase.fromJson(PurchaseTest.newJson(10, Purchase.State.PURCHASED), purchases.get(0).signature));
+
+        final Listener first = verifyInBackground(verifier, all);
+        assertTrue(first.mLatch.await(5, TimeUnit.SECONDS));
+        final Listener second = verifyInBackground(verifier, all);
+        assertTrue(second.mLatch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(purchases, first.mVerified);
+        assertEquals(purchases, second.mVerified);
+        assertEquals(2, mServer.mRequests.get());
+        // only the purchase which wasn't verified is sent again
+        assertEquals(5, mServer.mPurchases.get());
+    }
+
+    @Test
+    public void testShouldErrorIfServerFails() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 0);
+        mServer.mResponseCode = 500;
+        final RemotePurchaseVerifier verifier = newVerifier(1, 100);
+
+        final Listener listener = verifyInBackground(verifier, DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 1));
+
+        assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+        assertNull(listener.mVerified);
+        assertNotNull(listener.mException);
+        assertEquals(ResponseCodes.EXCEPTION, listener.mResponse);
+    }
+
+    @Test
+    public void testShouldErrorAllBatchedVerificationsIfSendingThrows() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 500);
+        final AtomicInteger connections = new AtomicInteger();
+        final RemotePurchaseVerifier verifier = new RemotePurchaseVerifier(mServer.getUrl(), 1, 100, false, new Handler(Looper.getMainLooper()), mThreads) {
+            @Override
+            protected void onConnectionCreated(@Nonnull HttpURLConnection connection) {
+                if (connections.incrementAndGet() > 1) {
+                    throw new IllegalStateException("Can't configure connection");
+                }
+            }
+        };
+        final Listener first = verifyInBackground(verifier, DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 1));
+        // the next verifications wait for the first request and are sent together
+        while (mServer.mRequests.get() == 0) {
+            Thread.sleep(10);
+        }
+        final Listener second = verifyInBackground(verifier, DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 1));
+        final Listener third = verifyInBackground(verifier, DefaultPurchaseVerifierTest.newPurchases(sKeys.getPrivate(), 1));
+
+        assertTrue(first.mLatch.await(5, TimeUnit.SECONDS));
+        assertNull(first.mException);
+        for (Listener listener : asList(second, third)) {
+            assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+            assertNull(listener.mVerified);
+            assertTrue(listener.mException instanceof IllegalStateException);
+            assertEquals(ResponseCodes.EXCEPTION, listener.mResponse);
+        }
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void testShouldNotSendEmptyRequests() throws Exception {
+        mServer = new VerificationServer(sKeys.getPublic(), 0);
+        final RemotePurchaseVerifier verifier = newVerifier(1, 100);
+
+        final Listener listener = verifyInBackground(verifier, Collections.<Purchase>emptyList());
+
+        assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.<Purchase>emptyList(), listener.mVerified);
+        assertEquals(0, mServer.mRequests.get());
+    }
+
+    @Nonnull
+    private RemotePurchaseVerifier newVerifier(int maxRequests, int maxBatchSize) throws Exception {
+        // the same purchases are created by the tests => nothing is cached
+        return newVerifier(maxRequests, maxBatchSize, false);
+    }
+
+    @Nonnull
+    private RemotePurchaseVerifier newVerifier(int maxRequests, int maxBatchSize, boolean cache) throws Exception {
+        return new RemotePurchaseVerifier(mServer.getUrl(), maxRequests, maxBatchSize, cache, new Handler(Looper.getMainLooper()), mThreads);
+    }
+
+    @Nonnull
+    private static Listener verifyInBackground(@Nonnull final PurchaseVerifier verifier, @Nonnull final List<Purchase> purchases) {
+        final Listener listener = new Listener();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                verifier.verify(purchases, listener);
+            }
+        }).start();
+        return listener;
+    }
+
+    private static class Listener implements RequestListener<List<Purchase>> {
+        @Nonnull
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        volatile List<Purchase> mVerified;
+        volatile Exception mException;
+        volatile int mResponse = -1;
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            mVerified = result;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            mResponse = response;
+            mException = e;
+            mLatch.countDown();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +42,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
 import static org.solovyev.android.checkout.RobotmediaDatabase.makeInClause;
 import static org.solovyev.android.checkout.Tests.sameThreadExecutor;
 
@@ -117,6 +119,76 @@ public class RobotmediaDatabaseTest {
         assertEquals(0, purchases.size());
     }
 
+    @Test
+    public void testShouldReadTransactionsForMoreSkusThanAllowedInOneQuery() throws Exception {
+        final int count = 2 * RobotmediaDatabase.MAX_ARGS + 1;
+        final List<String> skus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            skus.add("sku_" + i);
+        }
+        final int[] ids = {0, RobotmediaDatabase.MAX_ARGS - 1, RobotmediaDatabase.MAX_ARGS, count - 1};
+        for (int id : ids) {
+            mDb.insert(newTransaction(id));
+        }
+
+        final RobotmediaDatabase database = new RobotmediaDatabase(RuntimeEnvironment.application);
+        final Inventory.Products products = database.load(Inventory.Request.create().loadSkus(IN_APP, skus).loadAllPurchases());
+
+        final List<Purchase> purchases = products.get(IN_APP).getPurchases();
+        assertEquals(ids.length, purchases.size());
+        for (int id : ids) {
+            verifyPurchase(purchases, id);
+        }
+    }
+
+    @Test
+    public void testShouldReadTransactionsOfAllProductsAtOnce() throws Exception {
+        mDb.insert(newTransaction(0));
+        mDb.insert(newTransaction(1));
+        mDb.insert(newTransaction(2));
+
+        final Inventory.Request request = Inventory.Request.create()
+                .loadSkus(IN_APP, asList("sku_0", "sku_1"))
+                .loadSkus(SUBSCRIPTION, asList("sku_1", "sku_2"))
+                .loadAllPurchases();
+        final RobotmediaDatabase database = new RobotmediaDatabase(RuntimeEnvironment.application);
+        final Inventory.Products products = database.load(request);
+
+        final List<Purchase> inApps = products.get(IN_APP).getPurchases();
+        assertEquals(2, inApps.size());
+        verifyPurchase(inApps, 0);
+        verifyPurchase(inApps, 1);
+        final List<Purchase> subscriptions = products.get(SUBSCRIPTION).getPurchases();
+        assertEquals(2, subscriptions.size());
+        verifyPurchase(subscriptions, 1);
+        verifyPurchase(subscriptions, 2);
+    }
+
+    @Test
+    public void testShouldReuseOpenDatabase() throws Exception {
+        mDb.insert(newTransaction(0));
+
+        final RobotmediaDatabase database = new RobotmediaDatabase(RuntimeEnvironment.application, true);
+        final RobotmediaInventory inventory = new RobotmediaInventory(mCheckout, sameThreadExecutor(), sameThreadExecutor(), database);
+        CountDownCallback l = new CountDownCallback();
+        inventory.load(mRequest, l);
+        assertEquals(1, l.waitProducts().get(IN_APP).getPurchases().size());
+
+        mDb.insert(newTransaction(1));
+        l = new CountDownCallback();
+        inventory.load(mRequest, l);
+        assertEquals(2, l.waitProducts().get(IN_APP).getPurchases().size());
+
+        database.close();
+        mDb.insert(newTransaction(2));
+        l = new CountDownCallback();
+        inventory.load(mRequest, l);
+        final List<Purchase> purchases = l.waitProducts().get(IN_APP).getPurchases();
+        assertEquals(3, purchases.size());
+        verifyPurchase(purchases, 2);
+        database.close();
+    }
+
     @Test
     public void testShouldCreateValidInClause() throws Exception {
         assertEquals("(?)", makeInClause(1));
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.Purchase.State.CANCELLED;
+import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
+import static org.solovyev.android.checkout.Tests.sameThreadExecutor;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RobotmediaImportTest {
+
+    @Nonnull
+    private Context mContext;
+    @Nonnull
+    private File mFile;
+    @Nonnull
+    private Inventory.Request mRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(RobotmediaDatabase.NAME);
+        mFile = new File(mContext.getFilesDir(), "robotmedia");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mRequest = Inventory.Request.create()
+                .loadSkus(IN_APP, asList("1", "2"))
+                .loadSkus(SUBSCRIPTION, asList("3"))
+                .loadAllPurchases();
+    }
+
+    private void insertPurchases() throws Exception {
+        final BillingDB db = new BillingDB(mContext);
+        RobotmediaInventoryTest.insertPurchases(db, asList(
+                Purchase.fromJson(PurchaseTest.newJson(1, PURCHASED), ""),
+                Purchase.fromJson(PurchaseTest.newJson(2, CANCELLED), ""),
+                Purchase.fromJson(PurchaseTest.newJson(3, PURCHASED), ""),
+                Purchase.fromJson(PurchaseTest.newJson(4, PURCHASED), "")));
+        db.close();
+    }
+
+    @Test
+    public void testShouldImportPurchases() throws Exception {
+        insertPurchases();
+        final RobotmediaImport robotmediaImport = new RobotmediaImport(mContext, mFile);
+        assertFalse(mFile.exists());
+
+        final Inventory.Products products = robotmediaImport.load(mRequest);
+
+        assertNotNull(products);
+        assertTrue(mFile.exists());
+        verifyProducts(products);
+    }
+
+    @Test
+    public void testShouldNotReadDatabaseAfterImport() throws Exception {
+        insertPurchases();
+        new RobotmediaImport(mContext, mFile).load(mRequest);
+        // the database is not used after the import even by another instance
+        mContext.deleteDatabase(RobotmediaDatabase.NAME);
+
+        final RobotmediaImport robotmediaImport = new RobotmediaImport(mContext, mFile);
+        final Inventory.Products products = robotmediaImport.load(mRequest);
+
+        assertNotNull(products);
+        verifyProducts(products);
+    }
+
+    @Test
+    public void testShouldImportNothingIfThereIsNoDatabase() throws Exception {
+        final RobotmediaImport robotmediaImport = new RobotmediaImport(mContext, mFile);
+
+        final Inventory.Products products = robotmediaImport.load(mRequest);
+
+        assertNotNull(products);
+        assertTrue(mFile.exists());
+        assertTrue(products.get(IN_APP).getPurchases().isEmpty());
+        assertTrue(products.get(SUBSCRIPTION).getPurchases().isEmpty());
+    }
+
+    @Test
+    public void testShouldConvertPurchasesToJsonAndBack() throws Exception {
+        final List<Purchase> expected = asList(
+                new Purchase("1", "order1", "package", 1, 0, "payload", "", false, "", ""),
+                new Purchase("2", "order2", "package", 2, 2, "", "", false, "", ""));
+
+        final List<Purchase> actual = RobotmediaImport.fromJson(RobotmediaImport.toJson(expected));
+
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final Purchase e = expected.get(i);
+            final Purchase a = actual.get(i);
+            assertEquals(e.sku, a.sku);
+            assertEquals(e.orderId, a.orderId);
+            assertEquals(e.packageName, a.packageName);
+            assertEquals(e.time, a.time);
+            assertEquals(e.state, a.state);
+            assertEquals(e.payload, a.payload);
+            assertEquals("", a.data);
+        }
+    }
+
+    @Test
+    public void testShouldLoadImportedPurchasesInInventory() throws Exception {
+        insertPurchases();
+        final Billing billing = Tests.newBilling();
+        billing.setMainThread(sameThreadExecutor());
+        final Checkout checkout = Checkout.forApplication(billing);
+        final RobotmediaInventory inventory = new RobotmediaInventory(checkout, sameThreadExecutor(), sameThreadExecutor(), mFile);
+
+        verifyProducts(load(inventory));
+        mContext.deleteDatabase(RobotmediaDatabase.NAME);
+        verifyProducts(load(inventory));
+    }
+
+    @Test
+    public void testShouldShareImportBetweenInventories() throws Exception {
+        insertPurchases();
+        final Billing billing = Tests.newBilling();
+        billing.setMainThread(sameThreadExecutor());
+        final Checkout checkout = Checkout.forApplication(billing);
+        verifyProducts(load(new RobotmediaInventory(checkout, sameThreadExecutor(), sameThreadExecutor(), mFile)));
+        assertSame(billing.getRobotmediaImport(mFile), billing.getRobotmediaImport(new File(mFile.getPath())));
+
+        // neither the database nor the file are read again by another inventory
+        mContext.deleteDatabase(RobotmediaDatabase.NAME);
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        verifyProducts(load(new RobotmediaInventory(checkout, sameThreadExecutor(), sameThreadExecutor(), mFile)));
+    }
+
+    @Nonnull
+    private Inventory.Products load(@Nonnull Inventory inventory) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Inventory.Products> result = new AtomicReference<>();
+        inventory.load(mRequest, new Inventory.Callback() {
+            @Override
+            public void onLoaded(@Nonnull Inventory.Products products) {
+                result.set(products);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private void verifyProducts(@Nonnull Inventory.Products products) {
+        final Inventory.Product inApp = products.get(IN_APP);
+        assertEquals(2, inApp.getPurchases().size());
+        assertTrue(inApp.isPurchased("1"));
+        assertFalse(inApp.isPurchased("2"));
+        final Inventory.Product subscription = products.get(SUBSCRIPTION);
+        assertEquals(1, subscription.getPurchases().size());
+        assertTrue(subscription.isPurchased("3"));
+    }
+}
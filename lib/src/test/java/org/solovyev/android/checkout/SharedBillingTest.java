@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SharedBillingTest {
+
+    @Nonnull
+    private static Billing.Configuration newConfiguration(@Nonnull final String publicKey) {
+        return new Billing.DefaultConfiguration() {
+            @Nonnull
+            @Override
+            public String getPublicKey() {
+                return publicKey;
+            }
+        };
+    }
+
+    @Test
+    public void testShouldShareBillingWithSamePublicKey() throws Exception {
+        final Billing b1 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key"));
+        final Billing b2 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key"));
+        final Billing b3 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("other"));
+
+        assertSame(b1, b2);
+        assertNotSame(b1, b3);
+        assertEquals(2, SharedBilling.getReferences("key"));
+        assertEquals(1, SharedBilling.getReferences("other"));
+
+        SharedBilling.release(b1);
+        SharedBilling.release(b2);
+        SharedBilling.release(b3);
+    }
+
+    @Test
+    public void testShouldRemoveBillingWhenLastReferenceIsReleased() throws Exception {
+        final Billing b1 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key"));
+        final Billing b2 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key"));
+
+        SharedBilling.release(b1);
+        assertEquals(1, SharedBilling.getReferences("key"));
+        assertSame(b2, SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key")));
+
+        SharedBilling.release(b2);
+        SharedBilling.release(b2);
+        assertEquals(0, SharedBilling.getReferences("key"));
+
+        final Billing b3 = SharedBilling.acquire(RuntimeEnvironment.application, newConfiguration("key"));
+        assertNotSame(b1, b3);
+        SharedBilling.release(b3);
+    }
+
+    @Test
+    public void testShouldIgnoreUnknownBilling() throws Exception {
+        SharedBilling.release(Tests.newBilling());
+        assertEquals(0, SharedBilling.getReferences("test"));
+    }
+}
@@ -130,6 +130,7 @@ public final class Tests {
         final InAppBillingService service = mock(InAppBillingService.class);
         final CancellableExecutor sameThreadExecutor = sameThreadExecutor();
         billing.setBackground(sameThreadExecutor);
+        billing.setVerificationBackground(sameThreadExecutor);
         billing.setMainThread(sameThreadExecutor);
         setService(billing, service);
         return billing;
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+package org.solovyev.android.checkout;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.PublicKey;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * In-process HTTP server which verifies purchases the way {@link RemotePurchaseVerifier} expects.
+ * Signatures are checked with a public key, each request is delayed by <var>latencyMs</var> to
+ * simulate the network round-trip. Used by the tests and the benchmark.
+ */
+final class VerificationServer implements HttpHandler {
+
+    @Nonnull
+    private final PublicKey mKey;
+    private final long mLatencyMs;
+    @Nonnull
+    private final HttpServer mServer;
+    @Nonnull
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    @Nonnull
+    final AtomicInteger mRequests = new AtomicInteger();
+    @Nonnull
+    final AtomicInteger mPurchases = new AtomicInteger();
+    volatile int mResponseCode = 200;
+
+    VerificationServer(@Nonnull PublicKey key, long latencyMs) throws IOException {
+        mKey = key;
+        mLatencyMs = latencyMs;
+        // otherwise the response body (written after the headers) waits for the delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/verify", this);
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    @Nonnull
+    URL getUrl() throws IOException {
+        return new URL("http", "127.0.0.1", mServer.getAddress().getPort(), "/verify");
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String body = read(exchange.getRequestBody());
+            mRequests.incrementAndGet();
+            if (mLatencyMs > 0) {
+                Thread.sleep(mLatencyMs);
+            }
+            final int code = mResponseCode;
+            final byte[] response = code == 200 ? verify(body).getBytes("UTF-8") : new byte[0];
+            exchange.sendResponseHeaders(code, response.length == 0 ? -1 : response.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(response);
+            out.close();
+        } catch (InterruptedException | JSONException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Nonnull
+    private String verify(@Nonnull String body) throws JSONException {
+        final JSONArray purchases = new JSONObject(body).getJSONArray("purchases");
+        final JSONArray verified = new JSONArray();
+        for (int i = 0; i < purchases.length(); i++) {
+            final JSONObject purchase = purchases.getJSONObject(i);
+            verified.put(Security.verifyPurchase(mKey, purchase.getString("data"), purchase.getString("signature")));
+        }
+        mPurchases.addAndGet(purchases.length());
+        final JSONObject response = new JSONObject();
+        response.put("verified", verified);
+        return response.toString();
+    }
+
+    @Nonnull
+    private static String read(@Nonnull InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
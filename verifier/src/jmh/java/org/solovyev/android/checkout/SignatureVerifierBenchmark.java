@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures how many purchase signatures one {@link SignatureVerifier} shared by 1, 2, 4 and 8
+ * threads verifies per second. JMH sums the throughput of the threads: the score of a variant
+ * divided by its number of threads is the number of verifications per second per thread, which
+ * should stay the same as long as there are enough cores (i.e. the threads don't contend).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SignatureVerifierBenchmark {
+
+    private static final int PURCHASES = 1000;
+
+    @Nonnull
+    private final SignatureVerifier mVerifier = new SignatureVerifier();
+    private String mPublicKey;
+    private String[] mData;
+    private String[] mSignatures;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final KeyPair keys = generator.generateKeyPair();
+        mPublicKey = Base64.encode(keys.getPublic().getEncoded());
+        mData = new String[PURCHASES];
+        mSignatures = new String[PURCHASES];
+        final Signature signature = Signature.getInstance("SHA1withRSA");
+        for (int i = 0; i < PURCHASES; i++) {
+            // similar to the purchase data sent by Google Play
+            mData[i] = "{\"orderId\":\"GPA.1234-5678-9012-" + i + "\",\"packageName\":\"org.solovyev.android.checkout\",\"productId\":\"sku_" + i + "\",\"purchaseTime\":" + (1500000000000L + i) + ",\"purchaseState\":0,\"purchaseToken\":\"token_" + i + "\"}";
+            signature.initSign(keys.getPrivate());
+            signature.update(mData[i].getBytes("UTF-8"));
+            mSignatures[i] = Base64.encode(signature.sign());
+        }
+        // the key is parsed once and cached, don't measure it
+        mVerifier.getKey(mPublicKey);
+    }
+
+    /**
+     * Each thread goes through the purchases starting at its own position
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int mPosition;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            mPosition = (int) (Thread.currentThread().getId() * 31 % PURCHASES);
+        }
+
+        int next() {
+            mPosition = (mPosition + 1) % PURCHASES;
+            return mPosition;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean verify1Thread(@Nonnull Cursor cursor) {
+        return verify(cursor);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean verify2Threads(@Nonnull Cursor cursor) {
+        return verify(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean verify4Threads(@Nonnull Cursor cursor) {
+        return verify(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean verify8Threads(@Nonnull Cursor cursor) {
+        return verify(cursor);
+    }
+
+    private boolean verify(@Nonnull Cursor cursor) {
+        final int i = cursor.next();
+        final boolean verified = mVerifier.verify(mPublicKey, mData[i], mSignatures[i]);
+        if (!verified) {
+            throw new AssertionError("Signature is not verified");
+        }
+        return verified;
+    }
+}
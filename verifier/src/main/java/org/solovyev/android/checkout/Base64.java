@@ -51,6 +51,14 @@ final class Base64 {
     /** The new line character (\n) as a byte. */
     private final static byte NEW_LINE = (byte) '\n';
 
+    /**
+     * {@link java.util.Base64} is intrinsified by HotSpot and decodes several times faster than
+     * the code below (see Base64Benchmark). On Android it is a plain Java implementation which
+     * is only available since API 26 => not used there.
+     */
+    private final static boolean USE_PLATFORM_DECODER =
+            !"Dalvik".equals(System.getProperty("java.vm.name")) && PlatformDecoder.isAvailable();
+
     /**
      * The 64 valid Base64 values.
      */
@@ -415,8 +423,125 @@ final class Base64 {
      * @since 1.4
      */
     public static byte[] decode(String s) throws Base64DecoderException {
-        byte[] bytes = s.getBytes();
-        return decode(bytes, 0, bytes.length);
+        if (USE_PLATFORM_DECODER) {
+            byte[] out = PlatformDecoder.decode(s);
+            if (out != null) {
+                return out;
+            }
+        }
+        // the upper limit is exact for the canonical input => no trimming copy in most cases
+        byte[] out = new byte[getMaxDecodedLength(s)];
+        int len = decodeChars(s, out, 0);
+        if (len == out.length) {
+            return out;
+        }
+        byte[] trimmed = new byte[len];
+        System.arraycopy(out, 0, trimmed, 0, len);
+        return trimmed;
+    }
+
+    /**
+     * Returns the upper limit on the number of bytes decoded from <var>s</var>. The limit is exact
+     * if <var>s</var> contains no whitespace.
+     *
+     * @param s Base64 encoded data
+     * @return maximum size of the decoded data
+     */
+    public static int getMaxDecodedLength(String s) {
+        int len = s.length();
+        // at most 2 padding characters
+        for (int i = 0; i < 2 && len > 0 && s.charAt(len - 1) == EQUALS_SIGN; i++) {
+            len--;
+        }
+        return len * 3 / 4;
+    }
+
+    /**
+     * Decodes data from Base64 notation into <var>destination</var>. Unlike
+     * {@link #decode(String)} doesn't allocate any memory on Android and, thus, can be used in a
+     * loop with a reused buffer. On other runtimes the platform decoder is used as it is faster
+     * even with an intermediate array.
+     *
+     * @param s           the string to decode
+     * @param destination the array to hold the decoded data, must have at least
+     *                    {@link #getMaxDecodedLength(String)} bytes after <var>destOffset</var>
+     * @param destOffset  the index where the decoded data will be put
+     * @return the number of decoded bytes
+     */
+    public static int decode(String s, byte[] destination, int destOffset)
+            throws Base64DecoderException {
+        if (destination.length - destOffset < getMaxDecodedLength(s)) {
+            throw new IllegalArgumentException("Destination is too small");
+        }
+        if (USE_PLATFORM_DECODER) {
+            byte[] out = PlatformDecoder.decode(s);
+            if (out != null) {
+                System.arraycopy(out, 0, destination, destOffset, out.length);
+                return out.length;
+            }
+        }
+        return decodeChars(s, destination, destOffset);
+    }
+
+    /**
+     * Same as {@link #decode(String, byte[], int)} but never uses the platform decoder
+     */
+    static int decodeChars(String s, byte[] destination, int destOffset)
+            throws Base64DecoderException {
+        if (destination.length - destOffset < getMaxDecodedLength(s)) {
+            throw new IllegalArgumentException("Destination is too small");
+        }
+        final byte[] decodabet = DECODABET;
+        final int len = s.length();
+        int outPosn = destOffset;
+        // up to 4 decoded 6-bit values
+        int bits = 0;
+        int bitsPosn = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            byte decoded = c < decodabet.length ? decodabet[c] : -9;
+            if (decoded >= 0) {
+                bits = (bits << 6) | decoded;
+                if (++bitsPosn == 4) {
+                    destination[outPosn++] = (byte) (bits >> 16);
+                    destination[outPosn++] = (byte) (bits >> 8);
+                    destination[outPosn++] = (byte) bits;
+                    bits = 0;
+                    bitsPosn = 0;
+                }
+            } else if (c == EQUALS_SIGN) {
+                // same checks as in decode(byte[], int, int, byte[])
+                int bytesLeft = len - i;
+                char lastChar = s.charAt(len - 1);
+                if (bitsPosn == 0 || bitsPosn == 1) {
+                    throw new Base64DecoderException(
+                            "invalid padding byte '=' at byte offset " + i);
+                } else if (bitsPosn == 3 && bytesLeft > 2) {
+                    throw new Base64DecoderException(
+                            "padding byte '=' falsely signals end of encoded value "
+                                    + "at offset " + i);
+                } else if (lastChar != EQUALS_SIGN && lastChar != NEW_LINE) {
+                    throw new Base64DecoderException(
+                            "encoded value has invalid trailing byte");
+                }
+                break;
+            } else if (decoded != WHITE_SPACE_ENC) {
+                throw new Base64DecoderException("Bad Base64 input character at " + i
+                        + ": " + (int) c + "(decimal)");
+            }
+        }
+
+        // missing padding is allowed (see decode(byte[], int, int, byte[]))
+        if (bitsPosn == 1) {
+            throw new Base64DecoderException("single trailing character at offset "
+                    + (len - 1));
+        } else if (bitsPosn == 2) {
+            destination[outPosn++] = (byte) (bits >> 4);
+        } else if (bitsPosn == 3) {
+            destination[outPosn++] = (byte) (bits >> 10);
+            destination[outPosn++] = (byte) (bits >> 2);
+        }
+        return outPosn - destOffset;
     }
 
     /**
@@ -564,4 +689,31 @@ final class Base64 {
         System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
         return out;
     }
+
+    /**
+     * Not loaded on Android, see {@link #USE_PLATFORM_DECODER}
+     */
+    @SuppressWarnings("NewApi")
+    private static final class PlatformDecoder {
+        private static boolean isAvailable() {
+            try {
+                Class.forName("java.util.Base64");
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return decoded data or null if <var>s</var> is not accepted by the platform decoder
+         * (f.e. contains whitespace)
+         */
+        private static byte[] decode(String s) {
+            try {
+                return java.util.Base64.getDecoder().decode(s);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
 }
@@ -25,10 +25,6 @@ package org.solovyev.android.checkout;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.text.TextUtils;
-
-import com.android.vending.billing.InAppBillingServiceImpl;
-
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
@@ -67,7 +63,7 @@ public final class Purchase {
     // date and will lose access at that time unless they re-enable automatic renewal
     public final boolean autoRenewing;
     /**
-     * Raw data returned from {@link InAppBillingServiceImpl#getPurchases}
+     * Raw data returned from {@code getPurchases} of the In-App Billing service
      */
     @Nonnull
     public final String data;
@@ -104,13 +100,22 @@ public final class Purchase {
         this.signature = signature;
     }
 
+    /**
+     * Parses the purchase data, f.e. sent by the app to a server which verifies the purchases
+     * with {@link SignatureVerifier}
+     *
+     * @param data      raw data returned from {@code getPurchases} of the In-App Billing service
+     * @param signature signature of <var>data</var>
+     * @return purchase
+     * @throws JSONException if <var>data</var> is not a valid purchase JSON
+     */
     @Nonnull
-    static Purchase fromJson(@Nonnull String data, @Nonnull String signature) throws JSONException {
+    public static Purchase fromJson(@Nonnull String data, @Nonnull String signature) throws JSONException {
         return new Purchase(data, signature);
     }
 
     private static void tryPut(@Nonnull JSONObject json, @Nonnull String key, @Nonnull String name) throws JSONException {
-        if (!TextUtils.isEmpty(name)) {
+        if (name.length() > 0) {
             json.put(key, name);
         }
     }
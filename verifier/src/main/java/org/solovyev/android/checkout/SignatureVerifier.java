@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Verifies signatures of the purchase data (see {@link Purchase#data} and
+ * {@link Purchase#signature}). Unlike {@code Security} this class doesn't depend on Android
+ * classes and is built as a separate plain Java module together with {@link Purchase}, so a
+ * server can parse the purchases sent by the app with {@link Purchase#fromJson(String, String)}
+ * and verify them with {@link #verify(String, List)}. Public keys are parsed once and cached, {@link Signature}
+ * objects are reused by each thread and big batches are verified in parallel if an
+ * {@link ExecutorService} is provided.
+ */
+@ThreadSafe
+public final class SignatureVerifier {
+
+    private static final String KEY_FACTORY_ALGORITHM = "RSA";
+    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    // batches are split into chunks of this size which are picked up by the verifying threads
+    private static final int CHUNK_SIZE = 32;
+
+    // Signature#getInstance looks the algorithm up in the security providers which is much more
+    // expensive than re-initializing an existing instance. Instances are not thread-safe => one
+    // per thread
+    private static final ThreadLocal<Signature> sSignature = new ThreadLocal<>();
+    // decoded signatures, RSA-2048 signatures take 256 bytes
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<>();
+
+    @Nonnull
+    private final ConcurrentMap<String, PublicKey> mKeys = new ConcurrentHashMap<>();
+    @Nullable
+    private final ExecutorService mExecutor;
+    private final int mParallelism;
+
+    /**
+     * Creates a verifier which verifies batches on the calling thread
+     */
+    public SignatureVerifier() {
+        mExecutor = null;
+        mParallelism = 1;
+    }
+
+    /**
+     * @param executor    executor on which batches are verified
+     * @param parallelism maximum number of threads (including the calling thread) verifying one
+     *                    batch
+     */
+    public SignatureVerifier(@Nonnull ExecutorService executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism should be positive");
+        }
+        mExecutor = executor;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param publicKey Base64-encoded public key
+     * @return parsed public key, the same instance is returned for the same key
+     * @throws IllegalArgumentException if the key is invalid
+     */
+    @Nonnull
+    public PublicKey getKey(@Nonnull String publicKey) {
+        PublicKey key = mKeys.get(publicKey);
+        if (key == null) {
+            try {
+                key = parseKey(publicKey);
+            } catch (InvalidKeySpecException | Base64DecoderException e) {
+                throw new IllegalArgumentException(e);
+            }
+            final PublicKey old = mKeys.putIfAbsent(publicKey, key);
+            if (old != null) {
+                key = old;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @param publicKey Base64-encoded public key
+     * @param data      signed data
+     * @param signature Base64-encoded signature of the data
+     * @return true if <var>signature</var> is a valid signature of <var>data</var>
+     * @throws IllegalArgumentException if the key is invalid
+     */
+    public boolean verify(@Nonnull String publicKey, @Nonnull String data, @Nonnull String signature) {
+        return verify(getKey(publicKey), data, signature);
+    }
+
+    /**
+     * Same as {@link #verify(String, String, String)} but verifies a batch of signatures. If the
+     * verifier has an executor the batch is verified in parallel.
+     *
+     * @return array which contains the verification result for each pair of data and signature
+     */
+    @Nonnull
+    public boolean[] verify(@Nonnull String publicKey, @Nonnull List<String> data, @Nonnull List<String> signatures) {
+        if (data.size() != signatures.size()) {
+            throw new IllegalArgumentException("Each data must have a signature");
+        }
+        final Batch batch = new Batch(getKey(publicKey), data, signatures);
+        final int chunks = (data.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final int threads = Math.min(mParallelism, chunks);
+        if (mExecutor == null || threads <= 1) {
+            batch.run();
+            return batch.mResults;
+        }
+        final List<Future<?>> futures = new ArrayList<>(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            futures.add(mExecutor.submit(batch));
+        }
+        batch.run();
+        // all the chunks are taken: the tasks which haven't started yet have nothing to do
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+        batch.await();
+        return batch.mResults;
+    }
+
+    /**
+     * Same as {@link #verify(String, List, List)} but verifies the signatures of
+     * <var>purchases</var>
+     *
+     * @return purchases which signatures are valid, in the same order
+     */
+    @Nonnull
+    public List<Purchase> verify(@Nonnull String publicKey, @Nonnull List<Purchase> purchases) {
+        final List<String> data = new ArrayList<>(purchases.size());
+        final List<String> signatures = new ArrayList<>(purchases.size());
+        for (Purchase purchase : purchases) {
+            data.add(purchase.data);
+            signatures.add(purchase.signature);
+        }
+        final boolean[] results = verify(publicKey, data, signatures);
+        final List<Purchase> verified = new ArrayList<>(purchases.size());
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                verified.add(purchases.get(i));
+            }
+        }
+        return verified;
+    }
+
+    private static boolean verify(@Nonnull PublicKey key, @Nonnull String data, @Nonnull String signature) {
+        if (data.length() == 0 || signature.length() == 0) {
+            return false;
+        }
+        try {
+            return check(key, data, signature);
+        } catch (GeneralSecurityException | Base64DecoderException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a Base64-encoded X.509 RSA public key
+     */
+    @Nonnull
+    static PublicKey parseKey(@Nonnull String publicKey) throws InvalidKeySpecException, Base64DecoderException {
+        try {
+            final KeyFactory keyFactory = KeyFactory.getInstance(KEY_FACTORY_ALGORITHM);
+            return keyFactory.generatePublic(new X509EncodedKeySpec(Base64.decode(publicKey)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks the signature of the data with a {@link Signature} object of the calling thread
+     */
+    static boolean check(@Nonnull PublicKey key, @Nonnull String data, @Nonnull String signature) throws GeneralSecurityException, Base64DecoderException {
+        Signature sig = sSignature.get();
+        if (sig == null) {
+            sig = Signature.getInstance(SIGNATURE_ALGORITHM);
+            sSignature.set(sig);
+        }
+        byte[] buffer = sBuffer.get();
+        final int maxLength = Base64.getMaxDecodedLength(signature);
+        if (buffer == null || buffer.length < maxLength) {
+            buffer = new byte[Math.max(maxLength, 256)];
+            sBuffer.set(buffer);
+        }
+        final int length = Base64.decode(signature, buffer, 0);
+        sig.initVerify(key);
+        sig.update(data.getBytes(CHARSET));
+        return sig.verify(buffer, 0, length);
+    }
+
+    private static final class Batch implements Runnable {
+        @Nonnull
+        private final PublicKey mKey;
+        @Nonnull
+        private final List<String> mData;
+        @Nonnull
+        private final List<String> mSignatures;
+        // each element is written by one thread, the results are published by the lock
+        @Nonnull
+        private final boolean[] mResults;
+        @Nonnull
+        private final AtomicInteger mNextChunk = new AtomicInteger();
+        @GuardedBy("this")
+        private int mRunning;
+        @GuardedBy("this")
+        @Nullable
+        private RuntimeException mFailure;
+
+        Batch(@Nonnull PublicKey key, @Nonnull List<String> data, @Nonnull List<String> signatures) {
+            mKey = key;
+            mData = data;
+            mSignatures = signatures;
+            mResults = new boolean[data.size()];
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                mRunning++;
+            }
+            RuntimeException failure = null;
+            try {
+                final int size = mData.size();
+                int start;
+                while ((start = mNextChunk.getAndIncrement() * CHUNK_SIZE) < size) {
+                    final int end = Math.min(start + CHUNK_SIZE, size);
+                    for (int i = start; i < end; i++) {
+                        mResults[i] = verify(mKey, mData.get(i), mSignatures.get(i));
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    if (mFailure == null) {
+                        mFailure = failure;
+                    }
+                    mRunning--;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the threads which are verifying the chunks. Must be called after
+         * {@link #run()} as then all the chunks are taken and threads starting later do nothing.
+         */
+        synchronized void await() {
+            boolean interrupted = false;
+            while (mRunning > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the results are written by the other threads => they must be waited for
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+        }
+    }
+}
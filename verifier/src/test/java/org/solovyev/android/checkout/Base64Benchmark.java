@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.security.KeyPair;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compares decoding of a Base64-encoded signature and a public key by {@link Base64} (the old
+ * byte-based decoder, the char-based decoder into a reusable buffer and the public methods which
+ * choose the decoder depending on the runtime) and by {@link java.util.Base64}. Not run as a part of the test suite,
+ * use {@link #main(String[])} to run it.
+ */
+public final class Base64Benchmark {
+
+    private static final long DURATION_MS = 2000;
+
+    private enum Decoder {
+        BYTES,
+        CHARS_BUFFER,
+        STRING,
+        BUFFER,
+        JAVA_UTIL,
+        JAVA_UTIL_BUFFER
+    }
+
+    private Base64Benchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final KeyPair keys = SignatureVerifierTest.newKeyPair();
+        final byte[] signature = new byte[256];
+        new Random(42).nextBytes(signature);
+        final String[] inputs = {Base64.encode(signature), Base64.encode(keys.getPublic().getEncoded())};
+        // warm up
+        for (Decoder decoder : Decoder.values()) {
+            run(decoder, inputs[0]);
+        }
+        for (String input : inputs) {
+            for (Decoder decoder : Decoder.values()) {
+                System.out.println(decoder + ", " + input.length() + " characters: " + run(decoder, input) * 1000 / DURATION_MS + " decodings/s");
+            }
+        }
+    }
+
+    private static long run(@Nonnull Decoder decoder, @Nonnull String input) throws Exception {
+        final byte[] buffer = new byte[1024];
+        final java.util.Base64.Decoder javaDecoder = java.util.Base64.getDecoder();
+        long decoded = 0;
+        // to be sure the results are used
+        long sum = 0;
+        final long end = System.currentTimeMillis() + DURATION_MS;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                switch (decoder) {
+                    case BYTES:
+                        sum += Base64.decode(input.getBytes())[0];
+                        break;
+                    case CHARS_BUFFER:
+                        sum += Base64.decodeChars(input, buffer, 0);
+                        break;
+                    case STRING:
+                        sum += Base64.decode(input)[0];
+                        break;
+                    case BUFFER:
+                        sum += Base64.decode(input, buffer, 0);
+                        break;
+                    case JAVA_UTIL:
+                        sum += javaDecoder.decode(input)[0];
+                        break;
+                    case JAVA_UTIL_BUFFER:
+                        sum += javaDecoder.decode(input.getBytes(), buffer);
+                        break;
+                }
+            }
+            decoded += 1000;
+        }
+        if (sum == 42) {
+            System.out.println();
+        }
+        return decoded;
+    }
+}
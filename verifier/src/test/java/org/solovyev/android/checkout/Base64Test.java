@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Base64Test {
+
+    @Test
+    public void testShouldDecodeIntoBuffer() throws Exception {
+        final Random random = new Random(42);
+        final byte[] buffer = new byte[300];
+        for (int size = 0; size < 260; size++) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final String encoded = Base64.encode(data);
+
+            assertEquals(size, Base64.getMaxDecodedLength(encoded));
+            final int len = Base64.decode(encoded, buffer, 1);
+            assertArrayEquals(data, Arrays.copyOfRange(buffer, 1, 1 + len));
+            final int charsLen = Base64.decodeChars(encoded, buffer, 2);
+            assertArrayEquals(data, Arrays.copyOfRange(buffer, 2, 2 + charsLen));
+            assertArrayEquals(data, Base64.decode(encoded));
+        }
+    }
+
+    @Test
+    public void testShouldDecodeSameAsBytesDecoder() throws Exception {
+        final String[] inputs = {"QQ==", "QUI=", "QUJD", "QQ", "QUI", "QU\nJD", " QUJD\r\n", "QUI=\n", "QQ==\n"};
+        for (String input : inputs) {
+            final byte[] bytes = input.getBytes();
+            final byte[] expected = Base64.decode(bytes, 0, bytes.length);
+            assertArrayEquals(input, expected, Base64.decode(input));
+            final byte[] buffer = new byte[Base64.getMaxDecodedLength(input)];
+            final int len = Base64.decodeChars(input, buffer, 0);
+            assertArrayEquals(input, expected, Arrays.copyOf(buffer, len));
+        }
+    }
+
+    @Test
+    public void testShouldFailOnInvalidInput() throws Exception {
+        final String[] inputs = {"Q", "=QUJ", "Q===", "QQ==QUJD", "QU*D", "QUJé"};
+        for (String input : inputs) {
+            try {
+                Base64.decode(input);
+                fail(input);
+            } catch (Base64DecoderException e) {
+                // expected
+            }
+            try {
+                Base64.decodeChars(input, new byte[16], 0);
+                fail(input);
+            } catch (Base64DecoderException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShouldFailIfBufferIsTooSmall() throws Exception {
+        Base64.decodeChars("QUJD", new byte[2], 0);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// no Robolectric: the verifier must work without Android classes
+public class SignatureVerifierTest {
+
+    private static KeyPair sKeys;
+    private static String sPublicKey;
+    private static ExecutorService sExecutor;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        sKeys = newKeyPair();
+        sPublicKey = Base64.encode(sKeys.getPublic().getEncoded());
+        sExecutor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        sExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testShouldVerifySignature() throws Exception {
+        final SignatureVerifier verifier = new SignatureVerifier();
+        final String signature = sign(sKeys.getPrivate(), "data");
+
+        assertTrue(verifier.verify(sPublicKey, "data", signature));
+        assertFalse(verifier.verify(sPublicKey, "other", signature));
+        assertFalse(verifier.verify(sPublicKey, "data", ""));
+        assertFalse(verifier.verify(sPublicKey, "data", "*not base64*"));
+    }
+
+    @Test
+    public void testShouldVerifyNonAsciiData() throws Exception {
+        final SignatureVerifier verifier = new SignatureVerifier();
+        // data is signed as UTF-8 regardless of the platform's default charset
+        final String data = "{\"title\":\"\u00c4pfel \u20ac\"}";
+
+        assertTrue(verifier.verify(sPublicKey, data, sign(sKeys.getPrivate(), data)));
+    }
+
+    @Test
+    public void testShouldCacheKeys() throws Exception {
+        final SignatureVerifier verifier = new SignatureVerifier();
+
+        assertSame(verifier.getKey(sPublicKey), verifier.getKey(sPublicKey));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShouldThrowIfKeyIsInvalid() throws Exception {
+        new SignatureVerifier().getKey(Base64.encode("not a key".getBytes()));
+    }
+
+    @Test
+    public void testShouldVerifyBatchInParallel() throws Exception {
+        final List<String> data = new ArrayList<>();
+        final List<String> signatures = new ArrayList<>();
+        final boolean[] expected = new boolean[500];
+        for (int i = 0; i < expected.length; i++) {
+            final String d = "data" + i;
+            expected[i] = i % 7 != 0;
+            data.add(d);
+            signatures.add(sign(sKeys.getPrivate(), expected[i] ? d : "other" + i));
+        }
+
+        final boolean[] sequential = new SignatureVerifier().verify(sPublicKey, data, signatures);
+        final boolean[] parallel = new SignatureVerifier(sExecutor, 4).verify(sPublicKey, data, signatures);
+
+        assertArrayEquals(expected, sequential);
+        assertArrayEquals(expected, parallel);
+    }
+
+    @Test
+    public void testShouldVerifyPurchases() throws Exception {
+        final String data1 = "{\"productId\":\"sku1\",\"purchaseTime\":1500000000000,\"purchaseToken\":\"token1\"}";
+        final String data2 = "{\"productId\":\"sku2\",\"purchaseTime\":1500000000001,\"purchaseToken\":\"token2\"}";
+        final Purchase valid = Purchase.fromJson(data1, sign(sKeys.getPrivate(), data1));
+        final Purchase invalid = Purchase.fromJson(data2, sign(sKeys.getPrivate(), data1));
+
+        final List<Purchase> verified = new SignatureVerifier().verify(sPublicKey, asList(invalid, valid));
+
+        assertEquals(1, verified.size());
+        assertSame(valid, verified.get(0));
+        assertEquals("sku1", valid.sku);
+        assertEquals("token1", valid.token);
+    }
+
+    @Test
+    public void testShouldVerifyEmptyBatch() throws Exception {
+        final boolean[] results = new SignatureVerifier(sExecutor, 4).verify(sPublicKey, new ArrayList<String>(), new ArrayList<String>());
+
+        assertEquals(0, results.length);
+    }
+
+    @Nonnull
+    static KeyPair newKeyPair() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    @Nonnull
+    static String sign(@Nonnull PrivateKey key, @Nonnull String data) throws Exception {
+        final Signature signature = Signature.getInstance("SHA1withRSA");
+        signature.initSign(key);
+        signature.update(data.getBytes("UTF-8"));
+        return Base64.encode(signature.sign());
+    }
+}